@@ -0,0 +1,121 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Plays the game from a script of commands instead of a user, for
+ * replaying recorded games and for bots.
+ *
+ * Every line of the script is processed as a command until the script
+ * ends or a command quits the game. The game's output is collected and
+ * written in large blocks, and the number of commands processed per
+ * second is reported when the script is done.
+ *
+ * @author Michael Biondi
+ * @version 2026.10.18
+ */
+public class BatchRunner
+{
+    private Game game;
+    private Output out;
+    private long commands;
+    private long nanos;
+
+    /**
+     * Create a runner that plays in the given map.
+     * @param startingRoom The room the player starts in.
+     * @param out Where the game's output is written to.
+     */
+    public BatchRunner(Room startingRoom, Output out)
+    {
+        this.out = out;
+        game = new Game(startingRoom, InputStream.nullInputStream(), out);
+    }
+
+    /**
+     * Process the commands of a script.
+     * @param script The script, one command per line.
+     * @return true if a command quit the game.
+     * @throws IOException If the script can't be read.
+     */
+    public boolean run(BufferedReader script) throws IOException
+    {
+        long started = System.nanoTime();
+        boolean finished = false;
+        String line;
+        try {
+            while(!finished && (line = script.readLine()) != null) {
+                finished = game.processLine(line);
+                commands++;
+            }
+        }
+        finally {
+            out.flush();
+            nanos += System.nanoTime() - started;
+        }
+        return finished;
+    }
+
+    /**
+     * @return The number of commands processed so far.
+     */
+    public long getCommands()
+    {
+        return commands;
+    }
+
+    /**
+     * @return The number of commands processed per second so far.
+     */
+    public double getCommandsPerSecond()
+    {
+        return nanos == 0 ? 0 : commands * 1e9 / nanos;
+    }
+
+    /**
+     * Run a script from the command line. The report is written to the
+     * error stream, so that it doesn't mix with the game's output.
+     * @param args The script file (standard input if not given),
+     *             optionally "-q" to throw the game's output away, and
+     *             optionally "-j" and a directory to save the game in the
+     *             journal kept there, carrying on from where it was left.
+     * @throws IOException If the script can't be read, or the journal
+     *                     can't be read or written.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        String scriptFile = null;
+        String journalDirectory = null;
+        boolean quiet = false;
+        for(int i = 0; i < args.length; i++) {
+            if(args[i].equals("-q")) {
+                quiet = true;
+            }
+            else if(args[i].equals("-j") && i + 1 < args.length) {
+                journalDirectory = args[++i];
+            }
+            else {
+                scriptFile = args[i];
+            }
+        }
+        Output out = new BufferedOutput(quiet ? OutputStream.nullOutputStream() : System.out);
+        BatchRunner runner = new BatchRunner(Game.createRooms(), out);
+        Journal journal = journalDirectory == null ? null : new Journal(Path.of(journalDirectory), runner.game);
+        try(BufferedReader script = scriptFile == null
+                ? new BufferedReader(new InputStreamReader(System.in))
+                : Files.newBufferedReader(Path.of(scriptFile))) {
+            runner.run(script);
+        }
+        finally {
+            if(journal != null) {
+                journal.close();
+            }
+        }
+        System.err.printf("%d commands, %.0f commands/s%n", runner.getCommands(),
+                          runner.getCommandsPerSecond());
+    }
+}
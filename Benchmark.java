@@ -0,0 +1,1010 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+
+/**
+ * Micro-benchmarks for the hot paths of the game: parsing, command
+ * dispatch, movement and rendering, on the normal map and on a large
+ * generated one.
+ *
+ * Each benchmark is warmed up and then run for a fixed time. The time per
+ * operation and the bytes allocated per operation (like JMH's "-prof gc")
+ * are printed, so that changes to these paths can be compared.
+ *
+ * To run the benchmarks, call the "main" method; a benchmark name can be
+ * given to run only the benchmarks whose names contain it.
+ *
+ * @author Michael Biondi
+ * @version 2026.10.18
+ */
+public class Benchmark
+{
+    // How long each benchmark is warmed up and measured for.
+    private static final long WARMUP_NANOS = 1_000_000_000L;
+    private static final long MEASURE_NANOS = 2_000_000_000L;
+    // Size of the generated large map.
+    private static final int LARGE_WORLD_SIDE = 300;
+    private static final int LARGE_WORLD_ITEMS = 50;
+    // How many items the hoarder carries on the large map.
+    private static final int LARGE_HOARD = 2000;
+    // Side of the maps whose memory use is compared (a million rooms).
+    private static final int MEMORY_WORLD_SIDE = 1000;
+    // Moves made by a player whose history is measured, and its capacity.
+    private static final int HISTORY_MOVES = 10_000_000;
+    private static final int HISTORY_CAPACITY = 1000;
+    // Sides of the maps routes are found in (about 10^5 and 10^6 rooms).
+    private static final int[] ROUTE_WORLD_SIDES = { 317, 1000 };
+    // Private worlds made to compare copies of the map with instances of it.
+    private static final int WORLD_COPIES = 10_000;
+    // Items placed in rooms to measure their memory, and their kinds.
+    private static final int PLACED_ITEMS = 1_000_000;
+    private static final int PLACED_ITEM_ROOMS = 1000;
+    private static final int PLACED_ITEM_TYPES = 10;
+    // Words in the large vocabulary that abbreviations are completed from.
+    private static final int COMPLETION_VOCABULARY = 1_000_000;
+    // Events written to a journal and then replayed to restore the game.
+    private static final int JOURNAL_EVENTS = 1_000_000;
+    // Players listening in a crowded room.
+    private static final int[] ROOM_LISTENERS = { 1, 100, 10_000 };
+    // Timers waiting while scheduling more is measured.
+    private static final int PENDING_TIMERS = 1_000_000;
+    // Moves made on a random walk through a generated world.
+    private static final int GENERATED_MOVES = 10_000_000;
+    // Rooms are searched in a map this many rooms across, in which some
+    // have an item.
+    private static final int SEARCH_WORLD_SIDE = 1000;
+    private static final int SEARCH_ITEMS = 10_000;
+    // The map divided among threads, and the players wandering it.
+    private static final int SHARDED_WORLD_SIDE = 200;
+    private static final int SHARDED_PLAYERS = 1000;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private String filter;
+    private Output nowhere;
+    // Results are added here so the JIT can't throw the work away.
+    private int sink;
+
+    /**
+     * Create the benchmarks.
+     * @param filter Only benchmarks whose names contain this are run.
+     */
+    public Benchmark(String filter)
+    {
+        this.filter = filter;
+        nowhere = new BufferedOutput(OutputStream.nullOutputStream());
+    }
+
+    /**
+     * Run all benchmarks.
+     */
+    public void runAll()
+    {
+        // Run once with -Dzuul.metrics=true as well to see what metrics cost.
+        System.out.printf("%-40s %12s %12s%n", "Benchmark" + (Metrics.ENABLED ? " (metrics on)" : ""),
+                          "ns/op", "B/op");
+
+        Parser parser = new Parser(new RepeatingInput("take sword\n"), nowhere);
+        measure("parser.getCommand", () -> parser.getCommand().hashCode());
+        measure("parser.parseCommand", () -> parser.parseCommand("take sword").hashCode());
+        CommandWords scannerWords = new CommandWords();
+        measure("scanner.parseCommand (old parser)",
+                () -> scannerCommand(scannerWords, "take sword").hashCode());
+
+        CommandWords words = new CommandWords();
+        measure("commandWords.getCommandWord", () -> words.getCommandWord("take").ordinal());
+        measure("commandWords.getCommandWord(abbreviated)", () -> words.getCommandWord("ta").ordinal());
+        measureDispatch();
+        for(int listeners : ROOM_LISTENERS) {
+            measurePublish(listeners);
+        }
+        measureTimers();
+        measureCompletion(10);
+        measureCompletion(COMPLETION_VOCABULARY);
+
+        runWorld("small", Game.createRooms(), "downstairs", "upstairs", 1);
+        runWorld("large", createLargeWorld(LARGE_WORLD_SIDE, LARGE_WORLD_ITEMS), "east", "west",
+                 LARGE_HOARD);
+
+        for(int threads = 1; threads <= Runtime.getRuntime().availableProcessors(); threads *= 2) {
+            measureContention(threads, true);
+            measureContention(threads, false);
+            measureSharding(threads);
+        }
+
+        CompactWorld compact = createCompactWorld(LARGE_WORLD_SIDE);
+        Room compactStart = compact.getRoom(0);
+        measure("compact.room.getExit", () -> compactStart.getExit("east").hashCode());
+        measure("compact.room.getLongDescription", () -> compactStart.getLongDescription().length());
+
+        for(int side : ROUTE_WORLD_SIDES) {
+            measureRoutes(side);
+        }
+        measureMemory();
+        measureInstances();
+        measurePlacedItems(true);
+        measurePlacedItems(false);
+        measureHistory();
+        measureGeneratedWorld();
+        measureSearch();
+        measureJournal(Integer.MAX_VALUE);
+        measureJournal(Journal.DEFAULT_SNAPSHOT_INTERVAL);
+    }
+
+    /**
+     * Measure playing a game that saves every move in a journal, and then
+     * restoring the game from the journal.
+     * @param snapshotInterval The number of events between snapshots.
+     */
+    private void measureJournal(int snapshotInterval)
+    {
+        String snapshots = snapshotInterval == Integer.MAX_VALUE ? "no snapshots"
+                                                                 : "snapshot every " + snapshotInterval;
+        String name = "journal (" + JOURNAL_EVENTS + " events, " + snapshots + ")";
+        if(!name.contains(filter)) {
+            return;
+        }
+        Parser parser = new Parser(InputStream.nullInputStream(), nowhere);
+        Command[] commands = {
+            parser.parseCommand("take coffee"), parser.parseCommand("go downstairs"),
+            parser.parseCommand("drop coffee"), parser.parseCommand("go upstairs"),
+            parser.parseCommand("back"), parser.parseCommand("take coffee"),
+            parser.parseCommand("go upstairs"), parser.parseCommand("drop coffee"),
+        };
+        try {
+            Path directory = Files.createTempDirectory("journal");
+            Game game = new Game(Game.createRooms(), InputStream.nullInputStream(), nowhere);
+            Journal journal = new Journal(directory, game, snapshotInterval, false);
+            long started = System.nanoTime();
+            for(int i = 0; i < JOURNAL_EVENTS; i++) {
+                game.processCommand(commands[i % commands.length]);
+            }
+            journal.close();
+            long written = System.nanoTime() - started;
+
+            started = System.nanoTime();
+            Game restored = new Game(Game.createRooms(), InputStream.nullInputStream(), nowhere);
+            Journal reopened = new Journal(directory, restored, snapshotInterval, false);
+            long restoring = System.nanoTime() - started;
+            reopened.close();
+            if(reopened.getSequence() != journal.getSequence()
+               || !restored.getPlayer().getCurrentRoom().getName()
+                           .equals(game.getPlayer().getCurrentRoom().getName())
+               || !restored.getPlayer().items().equals(game.getPlayer().items())) {
+                throw new IllegalStateException("the game was not restored as it was");
+            }
+
+            System.out.printf("%-40s %12.0f events/s%n", "journal.play (" + snapshots + ")",
+                              JOURNAL_EVENTS * 1e9 / written);
+            System.out.printf("%-40s %12.1f ms%n", "journal.restore (" + snapshots + ")",
+                              restoring / 1e6);
+            try(var files = Files.list(directory)) {
+                for(Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+        catch(IOException e) {
+            System.out.println("journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Compare dispatching commands through a CommandRegistry with the
+     * switch statement Game used to have. Both call the same handlers,
+     * which do almost nothing, for commands of every verb in turn.
+     */
+    private void measureDispatch()
+    {
+        CommandWord[] words = CommandWord.values();
+        CommandHandler[] handlers = new CommandHandler[words.length];
+        CommandRegistry registry = new CommandRegistry();
+        for(CommandWord word : words) {
+            int value = word.ordinal() + 1;
+            handlers[word.ordinal()] = (game, command) -> value == 0;
+            registry.register(word, handlers[word.ordinal()]);
+        }
+        Command[] commands = new Command[words.length];
+        for(int i = 0; i < commands.length; i++) {
+            commands[i] = new Command(words[i], null);
+        }
+        int[] next = new int[1];
+        measure("dispatch.registry", () -> {
+            int i = next[0];
+            next[0] = i + 1 == commands.length ? 0 : i + 1;
+            return registry.dispatch(null, commands[i]) ? 1 : 0;
+        });
+        measure("dispatch.switch (old processCommand)", () -> {
+            int i = next[0];
+            next[0] = i + 1 == commands.length ? 0 : i + 1;
+            return switchDispatch(handlers, commands[i]) ? 1 : 0;
+        });
+    }
+
+    /**
+     * Dispatch a command the way Game.processCommand used to, with a
+     * switch over its command word, so it can be compared with the registry.
+     * @param handlers The handler of each command word, by ordinal.
+     * @param command The command.
+     * @return What the handler returned.
+     */
+    private static boolean switchDispatch(CommandHandler[] handlers, Command command)
+    {
+        boolean wantToQuit = false;
+        switch (command.getCommandWord()) {
+            case UNKNOWN:
+                handlers[CommandWord.UNKNOWN.ordinal()].execute(null, command);
+                break;
+            case HELP:
+                handlers[CommandWord.HELP.ordinal()].execute(null, command);
+                break;
+            case GO:
+                handlers[CommandWord.GO.ordinal()].execute(null, command);
+                break;
+            case LOOK:
+                handlers[CommandWord.LOOK.ordinal()].execute(null, command);
+                break;
+            case ITEMS:
+                handlers[CommandWord.ITEMS.ordinal()].execute(null, command);
+                break;
+            case TAKE:
+                handlers[CommandWord.TAKE.ordinal()].execute(null, command);
+                break;
+            case DROP:
+                handlers[CommandWord.DROP.ordinal()].execute(null, command);
+                break;
+            case BACK:
+                handlers[CommandWord.BACK.ordinal()].execute(null, command);
+                break;
+            case ROUTE:
+                handlers[CommandWord.ROUTE.ordinal()].execute(null, command);
+                break;
+            case QUIT:
+                wantToQuit = handlers[CommandWord.QUIT.ordinal()].execute(null, command);
+                break;
+        }
+        return wantToQuit;
+    }
+
+    /**
+     * Measure completing an abbreviation from a vocabulary of generated
+     * words, which should take as long however large the vocabulary is.
+     * @param size The number of words in the vocabulary.
+     */
+    private void measureCompletion(int size)
+    {
+        String name = "prefixTrie.get (" + size + " words)";
+        if(!name.contains(filter)) {
+            return;
+        }
+        PrefixTrie<String> trie = new PrefixTrie<>();
+        for(int i = 0; i < size; i++) {
+            String word = "item" + i;
+            trie.put(word, word);
+        }
+        trie.put("sword", "sword");
+        measure(name, () -> trie.get("sw").length());
+    }
+
+    /**
+     * Show that a player with a bounded history uses the same memory
+     * however often they move.
+     */
+    private void measureHistory()
+    {
+        if(!"history".contains(filter)) {
+            return;
+        }
+        Room here = new Room("here");
+        Room there = new Room("there");
+        Player bot = new Player(here, HISTORY_CAPACITY, false);
+        long before = usedMemory();
+        for(int move = 1; move <= HISTORY_MOVES; move++) {
+            bot.updateCurrentRoom(move % 2 == 0 ? here : there);
+            if(move == HISTORY_MOVES / 10) {
+                before = usedMemory();
+            }
+        }
+        long after = usedMemory();
+        sink += bot.getCurrentRoom().hashCode();
+        System.out.printf("%-40s %12d B%n", "history.growth (" + HISTORY_MOVES + " moves)", after - before);
+    }
+
+    /**
+     * Measure what telling a room's players about an event costs the
+     * player who caused it, however many players are listening.
+     * @param listeners The number of players in the room.
+     */
+    private void measurePublish(int listeners)
+    {
+        String name = "eventBus.publish (" + listeners + " listeners)";
+        if(!name.contains(filter)) {
+            return;
+        }
+        EventBus bus = new EventBus();
+        Room dome = new Room("dome", "in a crowded dome");
+        for(int i = 0; i < listeners; i++) {
+            dome.getOccupants().enter(new Subscriber(null));
+        }
+        Subscriber source = new Subscriber(null);
+        measure(name, () -> {
+            bus.publish(dome, source, "Penguin 1 went north.");
+            return 1;
+        });
+        bus.close();
+    }
+
+    /**
+     * Measure scheduling a timer and moving time on by a tick while a
+     * million timers are waiting, in a timing wheel and, for comparison,
+     * in a priority queue ordered by deadline.
+     */
+    private void measureTimers()
+    {
+        String wheelName = "timingWheel.schedule+tick (" + PENDING_TIMERS + " waiting)";
+        String queueName = "priorityQueue.schedule+tick (" + PENDING_TIMERS + " waiting)";
+        // Delays are drawn so that about one timer is due on each tick,
+        // which keeps the number waiting steady.
+        long maxDelay = 2L * PENDING_TIMERS;
+        Runnable nothing = () -> sink++;
+        if(wheelName.contains(filter)) {
+            TimingWheel wheel = new TimingWheel();
+            SplittableRandom random = new SplittableRandom(42);
+            for(int i = 0; i < PENDING_TIMERS; i++) {
+                wheel.schedule(random.nextLong(1, maxDelay), nothing);
+            }
+            measure(wheelName, () -> {
+                wheel.schedule(random.nextLong(1, maxDelay), nothing);
+                wheel.tick();
+                return wheel.size();
+            });
+        }
+        if(queueName.contains(filter)) {
+            PriorityQueue<long[]> queue = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+            SplittableRandom random = new SplittableRandom(42);
+            long[] time = new long[1];
+            for(int i = 0; i < PENDING_TIMERS; i++) {
+                queue.add(new long[] { random.nextLong(1, maxDelay) });
+            }
+            measure(queueName, () -> {
+                queue.add(new long[] { time[0] + random.nextLong(1, maxDelay) });
+                time[0]++;
+                while(queue.peek()[0] <= time[0]) {
+                    queue.poll();
+                    nothing.run();
+                }
+                return queue.size();
+            });
+        }
+    }
+
+    /**
+     * Measure building the search index of a map with a million rooms,
+     * searching it, and keeping it up to date as items move, compared
+     * with looking through every room.
+     */
+    private void measureSearch()
+    {
+        if(!"search".contains(filter)) {
+            return;
+        }
+        checkServerSearch();
+        Room start = createLargeWorld(SEARCH_WORLD_SIDE, 0);
+        long before = usedMemory();
+        long started = System.nanoTime();
+        SearchIndex index = SearchIndex.of(start);
+        long elapsed = System.nanoTime() - started;
+        long memory = usedMemory() - before;
+        List<Room> rooms = index.getRooms();
+        System.out.printf("%-40s %12.1f ms%n", "search.build (" + rooms.size() + " rooms)", elapsed / 1e6);
+        System.out.printf("%-40s %12d B (%d B in postings)%n", "search.memory", memory,
+                          index.getPostingsBytes());
+
+        // Put items in the map after it has been indexed, so that they
+        // are indexed as changes.
+        SplittableRandom random = new SplittableRandom(42);
+        for(int i = 0; i < SEARCH_ITEMS; i++) {
+            rooms.get(random.nextInt(rooms.size())).addItem("guitar", "an acoustic guitar", 3.5);
+        }
+        measure("search.search(rare word)", () -> index.search("guitar", SearchIndex.DEFAULT_RESULTS).size());
+        measure("search.search(common word)", () -> index.search("maze", SearchIndex.DEFAULT_RESULTS).size());
+        measure("search.search(two words)", () -> index.search("guitar 500", SearchIndex.DEFAULT_RESULTS).size());
+        measure("search.scan (walking every room)", () -> {
+            int found = 0;
+            for(Room room : rooms) {
+                if(room.getShortDescription().contains("guitar") || room.getItem("guitar") != null) {
+                    found++;
+                }
+            }
+            return found;
+        });
+        Room room = rooms.get(rooms.size() / 2);
+        room.addItem("guitar", "an acoustic guitar", 3.5);
+        measure("search.room.takeItem+addItem (indexed)", () -> {
+            room.addItem(room.takeItem("guitar"));
+            return 1;
+        });
+    }
+
+    /**
+     * Show that a long random walk through a generated world uses the
+     * same memory however far it goes, and how long each move takes.
+     */
+    private void measureGeneratedWorld()
+    {
+        if(!"generated".contains(filter)) {
+            return;
+        }
+        GeneratedWorld world = new GeneratedWorld(42);
+        Player walker = new Player(world.getStartingRoom(), GeneratedWorld.HISTORY_CAPACITY, true);
+        SplittableRandom random = new SplittableRandom(42);
+        long before = usedMemory();
+        long started = System.nanoTime();
+        for(int move = 1; move <= GENERATED_MOVES; move++) {
+            Room here = walker.getCurrentRoom();
+            List<String> directions = new ArrayList<>(here.getExitDirections());
+            walker.updateCurrentRoom(here.getExit(directions.get(random.nextInt(directions.size()))));
+            if(move == GENERATED_MOVES / 10) {
+                before = usedMemory();
+                started = System.nanoTime();
+            }
+        }
+        long elapsed = System.nanoTime() - started;
+        long after = usedMemory();
+        sink += walker.getCurrentRoom().hashCode();
+        System.out.printf("%-40s %12.1f ns/move%n", "generated.walk", (double) elapsed / (GENERATED_MOVES * 9 / 10));
+        System.out.printf("%-40s %12d B%n", "generated.growth (" + GENERATED_MOVES + " moves)", after - before);
+        System.out.printf("%-40s %12d rooms%n", "generated.rooms (made)", world.getGeneratedCount());
+        System.out.printf("%-40s %12d rooms%n", "generated.rooms (live)", world.getLiveRoomCount());
+    }
+
+    /**
+     * Measure finding routes between random rooms of a large map.
+     * @param side The number of rooms along each side of the map.
+     */
+    private void measureRoutes(int side)
+    {
+        int rooms = side * side;
+        String name = "routeFinder.findRoute (" + rooms + " rooms)";
+        if(!name.contains(filter)) {
+            return;
+        }
+        CompactWorld world = createCompactWorld(side);
+        long started = System.nanoTime();
+        RouteFinder finder = world.createRouteFinder();
+        System.out.printf("%-40s %12.1f ms%n", "routeFinder.create (" + rooms + " rooms)",
+                          (System.nanoTime() - started) / 1e6);
+        Random random = new Random(42);
+        int[] pairs = new int[2048];
+        for(int i = 0; i < pairs.length; i++) {
+            pairs[i] = random.nextInt(rooms);
+        }
+        int[] next = new int[1];
+        measure(name, () -> {
+            int i = next[0];
+            next[0] = (i + 2) % pairs.length;
+            return finder.findRoute(pairs[i], pairs[i + 1]).size();
+        });
+    }
+
+    /**
+     * Compare how much memory a million-room map takes when made of
+     * ordinary rooms and when stored as a compact world.
+     */
+    private void measureMemory()
+    {
+        if(!"memory".contains(filter)) {
+            return;
+        }
+        int rooms = MEMORY_WORLD_SIDE * MEMORY_WORLD_SIDE;
+        long before = usedMemory();
+        Room objects = createLargeWorld(MEMORY_WORLD_SIDE, 0);
+        long objectBytes = usedMemory() - before;
+        sink += objects.hashCode();
+        objects = null;
+
+        before = usedMemory();
+        CompactWorld compact = createCompactWorld(MEMORY_WORLD_SIDE);
+        long compactBytes = usedMemory() - before;
+        sink += compact.getRoomCount();
+
+        System.out.printf("%-40s %12.1f B/room%n", "memory.rooms (" + rooms + " rooms)",
+                          (double) objectBytes / rooms);
+        System.out.printf("%-40s %12.1f B/room%n", "memory.compact (" + rooms + " rooms)",
+                          (double) compactBytes / rooms);
+    }
+
+    /**
+     * Compare how much memory private worlds take when every player gets
+     * their own copy of the map and when they get an instance of one map.
+     * Every player moves two rooms and takes an item, so each world has
+     * been changed a little.
+     */
+    private void measureInstances()
+    {
+        if(!"memory.instances".contains(filter)) {
+            return;
+        }
+        List<Player> players = new ArrayList<>();
+        long before = usedMemory();
+        for(int i = 0; i < WORLD_COPIES; i++) {
+            players.add(playPrivately(Game.createRooms()));
+        }
+        long copyBytes = usedMemory() - before;
+        sink += players.size();
+        players.clear();
+
+        Room shared = Game.createRooms();
+        before = usedMemory();
+        for(int i = 0; i < WORLD_COPIES; i++) {
+            players.add(playPrivately(new WorldInstance(shared).getStartingRoom()));
+        }
+        long instanceBytes = usedMemory() - before;
+        sink += players.size();
+
+        System.out.printf("%-40s %12.1f B/world%n", "memory.instances (copies of the map)",
+                          (double) copyBytes / WORLD_COPIES);
+        System.out.printf("%-40s %12.1f B/world%n", "memory.instances (instances)",
+                          (double) instanceBytes / WORLD_COPIES);
+    }
+
+    /**
+     * Measure how much memory placing a million items takes. The items
+     * are of a few types, so they share their names and descriptions.
+     * @param stacked Whether items of the same type follow each other in
+     *                each room, so that they are stacked, or alternate
+     *                with another type of the same name, so that they
+     *                can't be.
+     */
+    private void measurePlacedItems(boolean stacked)
+    {
+        String name = "memory.items (" + PLACED_ITEMS + (stacked ? " stacked)" : " unstacked)");
+        if(!name.contains(filter)) {
+            return;
+        }
+        Room[] rooms = new Room[PLACED_ITEM_ROOMS];
+        for(int i = 0; i < rooms.length; i++) {
+            rooms[i] = new Room("storeroom " + i);
+        }
+        long before = usedMemory();
+        for(int i = 0; i < PLACED_ITEMS; i++) {
+            int type = (i / rooms.length) % PLACED_ITEM_TYPES;
+            String itemName = stacked ? "thing" + type : "thing";
+            rooms[i % rooms.length].addItem(new Item(itemName, "a thing of kind " + type, type));
+        }
+        long bytes = usedMemory() - before;
+        sink += rooms[0].getItems().size();
+        System.out.printf("%-40s %12.1f B/item%n", name, (double) bytes / PLACED_ITEMS);
+    }
+
+    /**
+     * @return A player who has walked into the kitchen of a private world
+     *         and taken the chips.
+     */
+    private static Player playPrivately(Room start)
+    {
+        Player player = new Player(start);
+        player.updateCurrentRoom(player.getCurrentRoom().getExit("downstairs"));
+        player.updateCurrentRoom(player.getCurrentRoom().getExit("ahead"));
+        player.pickUpItem("chips");
+        return player;
+    }
+
+    /**
+     * @return The bytes of heap in use after collecting garbage.
+     */
+    private static long usedMemory()
+    {
+        // Collect until the heap stops changing: after a burst of garbage
+        // the collector shrinks the heap over several collections, and
+        // what it counts as used shrinks with it.
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        long total = -1;
+        while(true) {
+            System.gc();
+            long now = runtime.totalMemory() - runtime.freeMemory();
+            if(now >= used && runtime.totalMemory() == total) {
+                return used;
+            }
+            used = Math.min(used, now);
+            total = runtime.totalMemory();
+        }
+    }
+
+    /**
+     * Run the benchmarks that depend on the map.
+     * @param name The name of the map.
+     * @param start The room to start in.
+     * @param there A direction leading out of the starting room.
+     * @param back The direction leading back to the starting room.
+     * @param hoardSize How many items the player carries.
+     */
+    private void runWorld(String name, Room start, String there, String back, int hoardSize)
+    {
+        measure(name + ".room.getExit", () -> start.getExit(there).hashCode());
+        measure(name + ".room.getLongDescription", () -> start.getLongDescription().length());
+
+        Room hoard = new Room("a hoard");
+        for(int i = 0; i < hoardSize; i++) {
+            hoard.addItem("item" + i, "hoarded item number " + i, i / 10.0);
+        }
+        Player hoarder = new Player(hoard);
+        for(Item item : hoard.getItems()) {
+            hoarder.pickUpItem(item.getName());
+        }
+        measure(name + ".player.items", () -> hoarder.items().length());
+        hoarder.setCarryCapacity(hoarder.getCarriedWeight() + 1000);
+        Item first = hoarder.getItems().get(0);
+        measure(name + ".player.dropItem+pickUpItem", () -> {
+            hoarder.dropItem(first.getName());
+            return hoarder.pickUpItem(first.getName()).getCount();
+        });
+
+        Game game = new Game(start, new RepeatingInput("look\n"), nowhere);
+        Command look = new Command(CommandWord.LOOK, null);
+        measure(name + ".game.processCommand(look)", () -> game.processCommand(look) ? 1 : 0);
+
+        Command goThere = new Command(CommandWord.GO, there);
+        Command goBack = new Command(CommandWord.GO, back);
+        measure(name + ".game.processCommand(go)", () -> {
+            game.processCommand(goThere);
+            return game.processCommand(goBack) ? 1 : 0;
+        });
+    }
+
+    /**
+     * Measure how many take/drop pairs per second several players manage
+     * at once in one room.
+     * @param threads The number of players.
+     * @param sameItem Whether all players fight over the same item, or
+     *                 each has an item of their own.
+     */
+    private void measureContention(int threads, boolean sameItem)
+    {
+        String name = "room.takeItem(" + (sameItem ? "same" : "own") + ", " + threads + " threads)";
+        if(!name.contains(filter)) {
+            return;
+        }
+        Room room = new Room("a crowded room");
+        for(int i = 0; i < threads; i++) {
+            room.addItem("item" + (sameItem ? 0 : i), "an item", 1.0);
+        }
+        AtomicLong operations = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> players = new ArrayList<>();
+        long end = System.nanoTime() + WARMUP_NANOS + MEASURE_NANOS;
+        for(int i = 0; i < threads; i++) {
+            String itemName = "item" + (sameItem ? 0 : i);
+            Thread player = new Thread(() -> {
+                long count = 0;
+                awaitQuietly(start);
+                while(System.nanoTime() < end) {
+                    Item item = room.takeItem(itemName);
+                    if(item != null) {
+                        room.addItem(item);
+                    }
+                    count++;
+                }
+                operations.addAndGet(count);
+            });
+            players.add(player);
+            player.start();
+        }
+        start.countDown();
+        for(Thread player : players) {
+            joinQuietly(player);
+        }
+        double seconds = (WARMUP_NANOS + MEASURE_NANOS) / 1e9;
+        System.out.printf("%-40s %12.0f ops/s%n", name, operations.get() / seconds);
+    }
+
+    /**
+     * Measure how many commands per second players wandering a map manage
+     * when the map is divided among threads (see ShardedWorld). Each
+     * player's next command is sent as soon as the last one is done.
+     * @param shards The number of regions, each with a thread.
+     */
+    private void measureSharding(int shards)
+    {
+        String name = "world.sharded(" + shards + " shards)";
+        if(!name.contains(filter)) {
+            return;
+        }
+        ShardedWorld world = new ShardedWorld(createLargeWorld(SHARDED_WORLD_SIDE, 1), shards);
+        List<Room> rooms = world.getPartition().getRooms();
+        CommandRegistry commands = Game.createCommands();
+        String[] moves = { "go north", "go south", "go east", "go west" };
+        SplittableRandom seeds = new SplittableRandom(42);
+        List<Game> games = new ArrayList<>();
+        for(int i = 0; i < SHARDED_PLAYERS; i++) {
+            Room start = rooms.get(seeds.nextInt(rooms.size()));
+            games.add(new Game(start, new BufferedOutput(OutputStream.nullOutputStream()), commands));
+        }
+        long end = System.nanoTime() + WARMUP_NANOS + MEASURE_NANOS;
+        CountDownLatch done = new CountDownLatch(SHARDED_PLAYERS);
+        AtomicLong operations = new AtomicLong();
+        for(Game game : games) {
+            SplittableRandom random = seeds.split();
+            Runnable wander = new Runnable() {
+                private long count;
+
+                @Override
+                public void run()
+                {
+                    if(System.nanoTime() < end) {
+                        count++;
+                        world.processLine(game, moves[random.nextInt(moves.length)]).thenRun(this);
+                    }
+                    else {
+                        operations.addAndGet(count);
+                        done.countDown();
+                    }
+                }
+            };
+            wander.run();
+        }
+        awaitQuietly(done);
+        world.shutdown();
+        double seconds = (WARMUP_NANOS + MEASURE_NANOS) / 1e9;
+        System.out.printf("%-40s %12.0f ops/s %6.1f%% handed over, %d of %d exits cut%n", name,
+                          operations.get() / seconds, 100.0 * world.getHandoffs() / operations.get(),
+                          world.getPartition().getCutExits(), 4L * SHARDED_WORLD_SIDE * (SHARDED_WORLD_SIDE - 1));
+    }
+
+    /**
+     * Warm up and then measure one operation, and print its results.
+     * @param name The name of the benchmark.
+     * @param operation The operation to measure.
+     */
+    private void measure(String name, IntSupplier operation)
+    {
+        if(!name.contains(filter)) {
+            return;
+        }
+        run(operation, WARMUP_NANOS);
+        long threadId = Thread.currentThread().getId();
+        long bytesBefore = THREADS.getThreadAllocatedBytes(threadId);
+        long started = System.nanoTime();
+        long count = run(operation, MEASURE_NANOS);
+        long elapsed = System.nanoTime() - started;
+        long bytes = THREADS.getThreadAllocatedBytes(threadId) - bytesBefore;
+        System.out.printf("%-40s %12.1f %12.1f%n", name, (double) elapsed / count, (double) bytes / count);
+    }
+
+    /**
+     * Repeat an operation for some time.
+     * @param operation The operation.
+     * @param nanos How long to repeat it for.
+     * @return How often the operation was run.
+     */
+    private long run(IntSupplier operation, long nanos)
+    {
+        long count = 0;
+        int batch = 1;
+        long now = System.nanoTime();
+        long end = now + nanos;
+        while(now < end) {
+            // grow the batches until the clock is checked only every
+            // millisecond or so, so that reading it doesn't dominate.
+            for(int i = 0; i < batch; i++) {
+                sink += operation.getAsInt();
+            }
+            count += batch;
+            long batchStart = now;
+            now = System.nanoTime();
+            if(now - batchStart < 1_000_000L && batch < (1 << 20)) {
+                batch *= 2;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Split a line into a command the way the parser used to, with a new
+     * Scanner for every line, so it can be compared with the parser.
+     * @param words The command words.
+     * @param inputLine The line to interpret.
+     * @return The command on the line.
+     */
+    private static Command scannerCommand(CommandWords words, String inputLine)
+    {
+        String word1 = null;
+        String word2 = null;
+        Scanner tokenizer = new Scanner(inputLine);
+        if(tokenizer.hasNext()) {
+            word1 = tokenizer.next();
+            if(tokenizer.hasNext()) {
+                word2 = tokenizer.next();
+            }
+        }
+        return new Command(words.getCommandWord(word1), word2);
+    }
+
+    /**
+     * Create a square map where every room has exits to its neighbours
+     * to the north, south, east and west, and holds some items.
+     * @param side The number of rooms along each side of the map.
+     * @param itemsPerRoom How many items to put in each room.
+     * @return The room in the north-west corner.
+     */
+    public static Room createLargeWorld(int side, int itemsPerRoom)
+    {
+        Room[][] rooms = new Room[side][side];
+        for(int y = 0; y < side; y++) {
+            for(int x = 0; x < side; x++) {
+                Room room = new Room("in room " + x + "," + y + " of a generated maze");
+                for(int i = 0; i < itemsPerRoom; i++) {
+                    room.addItem("item" + i, "generated item number " + i, i / 10.0);
+                }
+                rooms[y][x] = room;
+            }
+        }
+        for(int y = 0; y < side; y++) {
+            for(int x = 0; x < side; x++) {
+                Room room = rooms[y][x];
+                if(y > 0) {
+                    room.setExit("north", rooms[y - 1][x]);
+                }
+                if(y < side - 1) {
+                    room.setExit("south", rooms[y + 1][x]);
+                }
+                if(x > 0) {
+                    room.setExit("west", rooms[y][x - 1]);
+                }
+                if(x < side - 1) {
+                    room.setExit("east", rooms[y][x + 1]);
+                }
+            }
+        }
+        return rooms[0][0];
+    }
+
+    /**
+     * Create the same square map as createLargeWorld, without items, as a
+     * compact world. Room y * side + x is the room in column x, row y.
+     * @param side The number of rooms along each side of the map.
+     * @return The compact world.
+     */
+    public static CompactWorld createCompactWorld(int side)
+    {
+        String[] directions = { "north", "south", "west", "east" };
+        int[] dx = { 0, 0, -1, 1 };
+        int[] dy = { -1, 1, 0, 0 };
+        int rooms = side * side;
+        String[] descriptions = new String[rooms];
+        int[] exitStart = new int[rooms + 1];
+        int[] exitDirections = new int[4 * rooms - 4 * side];
+        int[] exitTargets = new int[exitDirections.length];
+        int exit = 0;
+        for(int room = 0; room < rooms; room++) {
+            int x = room % side;
+            int y = room / side;
+            descriptions[room] = "in room " + x + "," + y + " of a generated maze";
+            exitStart[room] = exit;
+            for(int d = 0; d < directions.length; d++) {
+                int nx = x + dx[d];
+                int ny = y + dy[d];
+                if(nx >= 0 && nx < side && ny >= 0 && ny < side) {
+                    exitDirections[exit] = d;
+                    exitTargets[exit] = ny * side + nx;
+                    exit++;
+                }
+            }
+        }
+        exitStart[rooms] = exit;
+        return new CompactWorld(descriptions, exitStart, directions, exitDirections, exitTargets);
+    }
+
+    /**
+     * Check that the players of a server can search for the rooms beyond
+     * the train, which has left the city by the time the first of them
+     * comes in.
+     */
+    private void checkServerSearch()
+    {
+        try {
+            GameServer server = new GameServer(0);
+            Thread serving = new Thread(server::serve);
+            serving.start();
+            try(Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+                OutputStream toServer = socket.getOutputStream();
+                toServer.write("search skyscrapers\nsearch dome\nquit\n".getBytes(StandardCharsets.UTF_8));
+                toServer.flush();
+                String replies = new String(socket.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+                if(!replies.contains("(city)") || !replies.contains("(dome)")) {
+                    throw new IllegalStateException("the server's search misses the rooms beyond the train");
+                }
+            }
+            finally {
+                server.stop();
+                joinQuietly(serving);
+            }
+        }
+        catch(IOException e) {
+            System.out.println("search: " + e.getMessage());
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch)
+    {
+        try {
+            latch.await();
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void joinQuietly(Thread thread)
+    {
+        try {
+            thread.join();
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Run the benchmarks.
+     * @param args Optionally, a part of the names of the benchmarks to run.
+     */
+    public static void main(String[] args)
+    {
+        Benchmark benchmark = new Benchmark(args.length > 0 ? args[0] : "");
+        benchmark.runAll();
+        if(benchmark.sink == 42) {
+            System.out.println();
+        }
+    }
+
+    /**
+     * An input stream that repeats the same text forever, used to feed
+     * the parser without waiting for a user.
+     */
+    private static class RepeatingInput extends InputStream
+    {
+        private byte[] text;
+        private int position;
+
+        public RepeatingInput(String text)
+        {
+            this.text = text.getBytes();
+        }
+
+        @Override
+        public int read()
+        {
+            byte b = text[position];
+            position = (position + 1) % text.length;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length)
+        {
+            for(int i = 0; i < length; i++) {
+                buffer[offset + i] = (byte) read();
+            }
+            return length;
+        }
+    }
+}
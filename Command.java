@@ -12,6 +12,10 @@
  * known) then the CommandWord is UNKNOWN.
  *
  * If the command had only one word, then the second word is <null>.
+ *
+ * Every command also has a verb number, which is what CommandRegistry
+ * dispatches on: the ordinal of its CommandWord, or for a verb added by
+ * a plugin, the number the registry gave it (its CommandWord is UNKNOWN).
  * 
  * @author  Michael Kölling and David J. Barnes
  * @version 2024.11.10
@@ -20,7 +24,9 @@
 public class Command
 {
     private CommandWord commandWord;
+    private int verb;
     private String secondWord;
+    private String firstWord;       // the verb as typed, if it wasn't recognised
 
     /**
      * Create a command object. First and second words must be supplied, but
@@ -32,6 +38,30 @@ public class Command
     public Command(CommandWord commandWord, String secondWord)
     {
         this.commandWord = commandWord;
+        this.verb = commandWord.ordinal();
+        this.secondWord = secondWord;
+    }
+
+    /**
+     * Create a command whose verb wasn't recognised.
+     * @param firstWord The verb as it was typed.
+     * @param secondWord The second word of the command. May be null.
+     */
+    public Command(String firstWord, String secondWord)
+    {
+        this(CommandWord.UNKNOWN, secondWord);
+        this.firstWord = firstWord;
+    }
+
+    /**
+     * Create a command for a verb added by a plugin.
+     * @param verb The number of the verb in a CommandRegistry.
+     * @param secondWord The second word of the command. May be null.
+     */
+    public Command(int verb, String secondWord)
+    {
+        this.commandWord = CommandWord.UNKNOWN;
+        this.verb = verb;
         this.secondWord = secondWord;
     }
 
@@ -44,6 +74,24 @@ public class Command
         return commandWord;
     }
 
+    /**
+     * @return The number of the verb of this command, by which it is
+     *         dispatched.
+     */
+    public int getVerb()
+    {
+        return verb;
+    }
+
+    /**
+     * @return The first word of this command as it was typed, if it wasn't
+     * a known verb; otherwise null.
+     */
+    public String getFirstWord()
+    {
+        return firstWord;
+    }
+
     /**
      * @return The second word of this command. Returns null if there was no
      * second word.
@@ -58,7 +106,7 @@ public class Command
      */
     public boolean isUnknown()
     {
-        return (commandWord == CommandWord.UNKNOWN);
+        return (verb == CommandWord.UNKNOWN.ordinal());
     }
 
     /**
@@ -0,0 +1,21 @@
+/**
+ * Something that carries out a command, such as "go" or a verb added by
+ * a plugin. Handlers are registered with a CommandRegistry.
+ *
+ * A handler may be shared by many games, so it should keep any state in
+ * the game (for example, in its player) rather than in itself.
+ *
+ * @author Michael Biondi
+ * @version 2026.10.18
+ */
+@FunctionalInterface
+public interface CommandHandler
+{
+    /**
+     * Carry out a command.
+     * @param game The game the command was given in.
+     * @param command The command.
+     * @return true If the command ends the game, false otherwise.
+     */
+    boolean execute(Game game, Command command);
+}
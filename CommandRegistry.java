@@ -0,0 +1,128 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * The handlers that carry out commands, looked up by verb number.
+ *
+ * The verbs numbered first are the CommandWords, numbered by ordinal.
+ * Plugins can add verbs of their own, such as "dance", which are numbered
+ * after them. Dispatching a command is then a single look-up in an array
+ * by the command's verb number. A command whose verb has no handler is
+ * handled as UNKNOWN.
+ *
+ * Handlers are usually registered before any game starts. Registering
+ * while games are being played is safe, but a game may still see the old
+ * handler for a moment.
+ *
+ * @author Michael Biondi
+ * @version 2026.10.18
+ */
+public class CommandRegistry
+{
+    private volatile CommandHandler[] handlers;     // by verb number
+    private HashMap<String, Integer> pluginVerbs;   // plugin verbs, by name
+    private volatile PrefixTrie<Integer> abbreviations; // plugin verbs again
+
+    /**
+     * Create a registry with no handlers.
+     */
+    public CommandRegistry()
+    {
+        handlers = new CommandHandler[CommandWord.values().length];
+        pluginVerbs = new HashMap<>();
+        abbreviations = new PrefixTrie<>();
+    }
+
+    /**
+     * Set the handler of a command word, replacing any it had.
+     * @param word The command word.
+     * @param handler The handler.
+     */
+    public synchronized void register(CommandWord word, CommandHandler handler)
+    {
+        CommandHandler[] updated = handlers.clone();
+        updated[word.ordinal()] = handler;
+        handlers = updated;
+    }
+
+    /**
+     * Add a verb of a plugin, or set the handler of one already added.
+     * @param verb The verb, as players type it.
+     * @param handler The handler.
+     * @return The number of the verb.
+     */
+    public synchronized int register(String verb, CommandHandler handler)
+    {
+        Integer number = pluginVerbs.get(verb);
+        CommandHandler[] updated;
+        if(number == null) {
+            number = handlers.length;
+            updated = Arrays.copyOf(handlers, number + 1);
+            pluginVerbs.put(verb, number);
+            PrefixTrie<Integer> verbs = new PrefixTrie<>();
+            for(String name : pluginVerbs.keySet()) {
+                verbs.put(name, pluginVerbs.get(name));
+            }
+            abbreviations = verbs;
+        }
+        else {
+            updated = handlers.clone();
+        }
+        updated[number] = handler;
+        handlers = updated;
+        return number;
+    }
+
+    /**
+     * Find a plugin verb from part of a line of input. Like command
+     * words, plugin verbs may be abbreviated.
+     * @param line The line of input.
+     * @param start The position of the verb's first character.
+     * @param end The position just after the verb's last character.
+     * @return The number of the verb, or -1 if there is no such verb.
+     */
+    public int getPluginVerb(String line, int start, int end)
+    {
+        Integer number = abbreviations.get(line, start, end);
+        return number == null ? -1 : number;
+    }
+
+    /**
+     * Check whether part of a line of input is a plugin verb spelled out
+     * in full, rather than an abbreviation.
+     * @param line The line of input.
+     * @param start The position of the verb's first character.
+     * @param end The position just after the verb's last character.
+     * @return true if it is, false if it isn't.
+     */
+    public boolean isPluginVerb(String line, int start, int end)
+    {
+        return abbreviations.getExact(line, start, end) != null;
+    }
+
+    /**
+     * @return The plugin verbs, in alphabetical order.
+     */
+    public List<String> getPluginVerbs()
+    {
+        return abbreviations.completions("");
+    }
+
+    /**
+     * Carry out a command with the handler of its verb.
+     * @param game The game the command was given in.
+     * @param command The command.
+     * @return true If the command ends the game, false otherwise.
+     */
+    public boolean dispatch(Game game, Command command)
+    {
+        CommandHandler[] current = handlers;
+        int verb = command.getVerb();
+        CommandHandler handler = verb < current.length ? current[verb] : null;
+        if(handler == null) {
+            handler = current[CommandWord.UNKNOWN.ordinal()];
+        }
+        return handler != null && handler.execute(game, command);
+    }
+}
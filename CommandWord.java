@@ -10,7 +10,8 @@ public enum CommandWord
     // A value for each command word along with its
     // corresponding user interface string.
     GO("go"), QUIT("quit"), HELP("help"), LOOK("look"), ITEMS("items"),
-    TAKE("take"), DROP("drop"), BACK("back"), UNKNOWN("?");
+    TAKE("take"), DROP("drop"), BACK("back"), ROUTE("route"), STATS("stats"),
+    SEARCH("search"), FIND("find"), UNKNOWN("?");
     
     // The command string.
     private String commandString;
@@ -1,11 +1,14 @@
 import java.util.HashMap;
+import java.util.List;
 
 /**
  * This class is part of the "World of Zuul" application. 
  * "World of Zuul" is a very simple, text based adventure game.
  * 
  * This class holds an enumeration of all command words known to the game.
- * It is used to recognise commands as they are typed in.
+ * It is used to recognise commands as they are typed in. A command word
+ * may be abbreviated, as long as no other command word starts the same
+ * way: "ta" means "take".
  *
  * @author  Michael Kölling and David J. Barnes
  * @version 2024.11.10
@@ -16,6 +19,11 @@ public class CommandWords
     // A mapping between a command word and the CommandWord
     // associated with it.
     private HashMap<String, CommandWord> validCommands;
+    // The same command words in an open-addressed hash table, so that a
+    // word can be looked up straight from an input line without copying it.
+    private CommandWord[] table;
+    // The same command words again, to look up abbreviations.
+    private PrefixTrie<CommandWord> abbreviations;
 
     /**
      * Constructor - initialise the command words.
@@ -28,17 +36,36 @@ public class CommandWords
                 validCommands.put(command.toString(), command);
             }
         }
+        table = new CommandWord[Integer.highestOneBit(validCommands.size() * 4)];
+        for(CommandWord command : validCommands.values()) {
+            String word = command.toString();
+            int slot = hash(word, 0, word.length()) & (table.length - 1);
+            while(table[slot] != null) {
+                slot = (slot + 1) & (table.length - 1);
+            }
+            table[slot] = command;
+        }
+        abbreviations = new PrefixTrie<>();
+        for(CommandWord command : validCommands.values()) {
+            abbreviations.put(command.toString(), command);
+        }
     }
 
     /**
      * Find the CommandWord associated with a command word.
      * @param commandWord The word to look up.
      * @return The CommandWord correspondng to commandWord, or UNKNOWN
-     *         if it is not a valid command word.
+     *         if it is not a valid command word or abbreviation.
      */
     public CommandWord getCommandWord(String commandWord)
     {
+        if(commandWord == null) {
+            return CommandWord.UNKNOWN;
+        }
         CommandWord command = validCommands.get(commandWord);
+        if(command == null) {
+            command = abbreviations.get(commandWord);
+        }
         if(command != null) {
             return command;
         }
@@ -47,6 +74,66 @@ public class CommandWords
         }
     }
     
+    /**
+     * Find the CommandWord associated with the word found in part of
+     * a line of input, without copying the word out of the line.
+     * @param line The line of input.
+     * @param start The position of the word's first character.
+     * @param end The position just after the word's last character.
+     * @return The CommandWord corresponding to the word, or UNKNOWN
+     *         if it is not a valid command word or abbreviation.
+     */
+    public CommandWord getCommandWord(String line, int start, int end)
+    {
+        CommandWord command = getExactCommandWord(line, start, end);
+        if(command == CommandWord.UNKNOWN) {
+            CommandWord abbreviated = abbreviations.get(line, start, end);
+            if(abbreviated != null) {
+                command = abbreviated;
+            }
+        }
+        return command;
+    }
+
+    /**
+     * List the command words that start with a prefix.
+     * @param prefix The start of a command word.
+     * @return The command words starting with it, in alphabetical order.
+     */
+    public List<String> getCompletions(String prefix)
+    {
+        return abbreviations.completions(prefix);
+    }
+
+    /**
+     * Find the CommandWord spelled out in full in part of a line of input.
+     */
+    private CommandWord getExactCommandWord(String line, int start, int end)
+    {
+        int length = end - start;
+        int slot = hash(line, start, end) & (table.length - 1);
+        while(table[slot] != null) {
+            String word = table[slot].toString();
+            if(word.length() == length && line.regionMatches(start, word, 0, length)) {
+                return table[slot];
+            }
+            slot = (slot + 1) & (table.length - 1);
+        }
+        return CommandWord.UNKNOWN;
+    }
+
+    /**
+     * @return The same hash code String.hashCode() gives, for part of a string.
+     */
+    private static int hash(String text, int start, int end)
+    {
+        int h = 0;
+        for(int i = start; i < end; i++) {
+            h = 31 * h + text.charAt(i);
+        }
+        return h ^ (h >>> 16);
+    }
+
     /**
      * Check whether a given String is a valid command word. 
      * @return true if it is, false if it isn't.
@@ -56,14 +143,38 @@ public class CommandWords
         return validCommands.containsKey(aString);
     }
 
+    /**
+     * Check whether part of a line of input is a command word spelled out
+     * in full, rather than an abbreviation.
+     * @param line The line of input.
+     * @param start The position of the word's first character.
+     * @param end The position just after the word's last character.
+     * @return true if it is, false if it isn't.
+     */
+    public boolean isCommand(String line, int start, int end)
+    {
+        return getExactCommandWord(line, start, end) != CommandWord.UNKNOWN;
+    }
+
     /**
      * Print all valid commands to System.out.
      */
     public void showAll() 
+    {
+        BufferedOutput out = new BufferedOutput(System.out);
+        showAll(out);
+        out.flush();
+    }
+
+    /**
+     * Print all valid commands to the given output.
+     * @param out The output to print to.
+     */
+    public void showAll(Output out)
     {
         for(String command : validCommands.keySet()) {
-            System.out.print(command + "  ");
+            out.print(command + "  ");
         }
-        System.out.println();
+        out.println();
     }
 }
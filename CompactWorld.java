@@ -0,0 +1,264 @@
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A map of the game stored in a few plain arrays, for worlds with millions
+ * of rooms.
+ *
+ * Rooms are numbered from 0. The exits of all rooms are kept one after
+ * the other in two arrays, one for their directions and one for the rooms
+ * they lead to; the exits of room r are those from exitStart[r] up to
+ * exitStart[r + 1]. Directions are stored as numbers into a small table of
+ * direction names, so every "north" in the world is the same string.
+ *
+ * Players still move through ordinary Room objects: getRoom() returns a
+ * thin view of a numbered room that reads its exits from the arrays. Views
+ * are only made for rooms that players (or items) have been in.
+ *
+ * @author Michael Biondi
+ * @version 2026.10.18
+ */
+public class CompactWorld
+{
+    private String[] names;         // the name of each room, or null if no room has one
+    private String[] descriptions;
+    private String[] directions;
+    private HashMap<String, Integer> directionNumbers;
+    private int[] exitStart;
+    private int[] exitDirections;
+    private int[] exitTargets;
+    // The views made so far, by room number.
+    private ConcurrentHashMap<Integer, CompactRoom> views;
+
+    /**
+     * Create a world from its arrays.
+     * @param descriptions The description of each room.
+     * @param exitStart Where each room's exits begin in the exit arrays,
+     *                  plus one more entry where the last room's exits end.
+     * @param directions The names of all directions.
+     * @param exitDirections The direction of each exit, as a number into
+     *                       the direction names.
+     * @param exitTargets The room each exit leads to.
+     */
+    public CompactWorld(String[] descriptions, int[] exitStart, String[] directions,
+                        int[] exitDirections, int[] exitTargets)
+    {
+        this(null, descriptions, exitStart, directions, exitDirections, exitTargets);
+    }
+
+    /**
+     * Create a world of named rooms from its arrays.
+     * @param names The name of each room (null for a room without one),
+     *              or null if no room has a name.
+     * @param descriptions The description of each room.
+     * @param exitStart Where each room's exits begin in the exit arrays,
+     *                  plus one more entry where the last room's exits end.
+     * @param directions The names of all directions.
+     * @param exitDirections The direction of each exit, as a number into
+     *                       the direction names.
+     * @param exitTargets The room each exit leads to.
+     */
+    public CompactWorld(String[] names, String[] descriptions, int[] exitStart, String[] directions,
+                        int[] exitDirections, int[] exitTargets)
+    {
+        if((names != null && names.length != descriptions.length)
+           || exitStart.length != descriptions.length + 1
+           || exitDirections.length != exitTargets.length
+           || exitStart[descriptions.length] != exitTargets.length) {
+            throw new IllegalArgumentException("the exit arrays don't match the rooms");
+        }
+        this.names = names;
+        this.descriptions = descriptions;
+        this.exitStart = exitStart;
+        this.directions = directions;
+        this.exitDirections = exitDirections;
+        this.exitTargets = exitTargets;
+        directionNumbers = new HashMap<>();
+        for(int i = 0; i < directions.length; i++) {
+            directionNumbers.put(directions[i], i);
+        }
+        views = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Copy a map made of ordinary rooms, such as the one built by
+     * Game.createRooms(), into a compact world. Room 0 is the given room.
+     * The rooms keep their names, so they can still be found by name.
+     * @param start The room to start copying from; every room that can
+     *              be reached from it is copied, with its items.
+     * @return The compact world.
+     */
+    public static CompactWorld copyOf(Room start)
+    {
+        IdentityHashMap<Room, Integer> numbers = new IdentityHashMap<>();
+        List<Room> rooms = new ArrayList<>();
+        numbers.put(start, 0);
+        rooms.add(start);
+        // Number the rooms in the order they are first reached.
+        for(int i = 0; i < rooms.size(); i++) {
+            Room room = rooms.get(i);
+            for(String direction : room.getExitDirections()) {
+                Room neighbor = room.getExit(direction);
+                if(!numbers.containsKey(neighbor)) {
+                    numbers.put(neighbor, rooms.size());
+                    rooms.add(neighbor);
+                }
+            }
+        }
+
+        HashMap<String, Integer> directionNumbers = new HashMap<>();
+        List<String> directions = new ArrayList<>();
+        String[] names = new String[rooms.size()];
+        String[] descriptions = new String[rooms.size()];
+        int[] exitStart = new int[rooms.size() + 1];
+        List<Integer> exitDirections = new ArrayList<>();
+        List<Integer> exitTargets = new ArrayList<>();
+        for(int i = 0; i < rooms.size(); i++) {
+            Room room = rooms.get(i);
+            names[i] = room.getName();
+            descriptions[i] = room.getShortDescription();
+            exitStart[i] = exitTargets.size();
+            for(String direction : room.getExitDirections()) {
+                Integer number = directionNumbers.get(direction);
+                if(number == null) {
+                    number = directions.size();
+                    directionNumbers.put(direction, number);
+                    directions.add(direction);
+                }
+                exitDirections.add(number);
+                exitTargets.add(numbers.get(room.getExit(direction)));
+            }
+        }
+        exitStart[rooms.size()] = exitTargets.size();
+
+        CompactWorld world = new CompactWorld(names, descriptions, exitStart,
+                                              directions.toArray(new String[0]),
+                                              toArray(exitDirections), toArray(exitTargets));
+        for(int i = 0; i < rooms.size(); i++) {
+            for(Item item : rooms.get(i).getItems()) {
+                world.getRoom(i).addItem(item);
+            }
+        }
+        return world;
+    }
+
+    /**
+     * @return The number of rooms in the world.
+     */
+    public int getRoomCount()
+    {
+        return descriptions.length;
+    }
+
+    /**
+     * Return a room of the world as an ordinary Room. The same object is
+     * returned every time for the same room.
+     * @param number The number of the room.
+     * @return The room.
+     */
+    public Room getRoom(int number)
+    {
+        return views.computeIfAbsent(number, n -> new CompactRoom(this, n,
+                                                               names == null ? null : names[n],
+                                                               descriptions[n]));
+    }
+
+    /**
+     * Return the room reached from a room in a direction.
+     * @param number The number of the room.
+     * @param direction The direction.
+     * @return The number of the room in that direction, or -1 if there is
+     *         no exit in that direction.
+     */
+    public int getExit(int number, String direction)
+    {
+        Integer directionNumber = directionNumbers.get(direction);
+        if(directionNumber != null) {
+            for(int exit = exitStart[number]; exit < exitStart[number + 1]; exit++) {
+                if(exitDirections[exit] == directionNumber) {
+                    return exitTargets[exit];
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return A route finder over this world, which finds routes between
+     *         room numbers.
+     */
+    public RouteFinder createRouteFinder()
+    {
+        return new RouteFinder(exitStart, exitDirections, exitTargets, directions);
+    }
+
+    private static int[] toArray(List<Integer> list)
+    {
+        int[] array = new int[list.size()];
+        for(int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+    /**
+     * A view of one room of a compact world. Its exits are read from the
+     * world's arrays; only its items are kept in the room itself.
+     */
+    private static class CompactRoom extends Room
+    {
+        private CompactWorld world;
+        private int number;
+
+        private CompactRoom(CompactWorld world, int number, String name, String description)
+        {
+            super(name, description);
+            this.world = world;
+            this.number = number;
+        }
+
+        @Override
+        public void setExit(String direction, Room neighbor)
+        {
+            throw new UnsupportedOperationException("the exits of a compact world can't be changed");
+        }
+
+        @Override
+        public void removeExit(String direction)
+        {
+            throw new UnsupportedOperationException("the exits of a compact world can't be changed");
+        }
+
+        @Override
+        public Room getExit(String direction)
+        {
+            int target = world.getExit(number, direction);
+            return target < 0 ? null : world.getRoom(target);
+        }
+
+        @Override
+        public Collection<String> getExitDirections()
+        {
+            int first = world.exitStart[number];
+            int count = world.exitStart[number + 1] - first;
+            return new AbstractList<String>() {
+                @Override
+                public String get(int index)
+                {
+                    return world.directions[world.exitDirections[first + index]];
+                }
+
+                @Override
+                public int size()
+                {
+                    return count;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,68 @@
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Tells players what the others in the same room are doing, such as
+ * "Penguin 3 picked up the sword."
+ *
+ * Publishing an event is cheap for the player who causes it: the event
+ * is added to the room's Occupants, and the room is queued for the bus's
+ * own thread the first time it has something waiting. That thread then
+ * passes everything collected in the room on to every occupant at once,
+ * so a burst of events in a crowded room costs one pass over its players.
+ * Each player's Subscriber keeps only a few events and summarizes the
+ * rest, so a player who doesn't keep up can't make the others wait.
+ *
+ * @author Michael Biondi
+ * @version 2026.10.18
+ */
+public class EventBus
+{
+    private LinkedBlockingQueue<Occupants> waiting;     // rooms with events to pass on
+    private Thread dispatcher;
+
+    /**
+     * Create a bus and start its thread.
+     */
+    public EventBus()
+    {
+        waiting = new LinkedBlockingQueue<>();
+        dispatcher = new Thread(this::dispatch, "event-bus");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    /**
+     * Tell the players in a room that something has happened there.
+     * @param room The room.
+     * @param source Where the events of the player who did it go, so that
+     *               they aren't told about it themselves, or null.
+     * @param text What happened.
+     */
+    public void publish(Room room, Subscriber source, String text)
+    {
+        Occupants occupants = room.getOccupants();
+        if(occupants.post(source, text)) {
+            waiting.add(occupants);
+        }
+    }
+
+    /**
+     * Stop passing on events.
+     */
+    public void close()
+    {
+        dispatcher.interrupt();
+    }
+
+    private void dispatch()
+    {
+        try {
+            while(true) {
+                waiting.take().deliver();
+            }
+        }
+        catch(InterruptedException e) {
+            // the bus has been closed.
+        }
+    }
+}
@@ -1,3 +1,8 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.List;
+
 /**
  *  This class is the main class of the "World of Zuul" application. 
  *  "World of Zuul" is a very simple, text based adventure game.  Users 
@@ -9,7 +14,9 @@
  * 
  *  This main class creates and initialises all the others: it creates all
  *  rooms, creates the parser and starts the game.  It also evaluates and
- *  executes the commands that the parser returns.
+ *  executes the commands that the parser returns, by handing each to its
+ *  handler in a CommandRegistry. More commands can be added by
+ *  registering handlers for new verbs (see getCommands()).
  * 
  * @author  Michael Kölling and David J. Barnes, updated by Michael Biondi
  * @version 2024.11.12
@@ -17,34 +24,200 @@
 
 public class Game 
 {
+    // The most a player can carry, in pounds, set with -Dzuul.carryCapacity; 0 for no limit.
+    public static final double CARRY_CAPACITY = carryCapacity();
+
     private Parser parser;
     private Player player;
+    private Output out;
+    private CommandRegistry commands;
+    private int commandsRun;        // counted only to decide which to time for metrics
+    private int[] unreportedCommands;   // commands not yet added to the metrics, by verb
+    private SearchIndex index;      // the map's index, looked up the first time it is searched
+    private Journal journal;        // where moves are saved, if anywhere
+    private EventBus events;        // where other players are told what happens, if anywhere
         
     /**
      * Create the game and initialise its internal map.
      */
     public Game() 
     {
-        createRooms();
-        parser = new Parser();
+        this(createRooms(), System.in, new BufferedOutput(System.out));
+    }
+
+    /**
+     * Create the game with a map loaded from a world file.
+     * 
+     * @param worldFile The path of the world file, in text or compiled form.
+     * @throws IOException If the world file can't be loaded.
+     */
+    public Game(String worldFile) throws IOException
+    {
+        this(new WorldFile(Path.of(worldFile)).getStartingRoom(), System.in,
+             new BufferedOutput(System.out));
+    }
+
+    /**
+     * Create a game session in an existing map. Several sessions can
+     * share the same rooms, each with its own player, input and output.
+     * 
+     * @param startingRoom The room the player starts in.
+     * @param in The stream commands are read from.
+     * @param out Where all game output is written to.
+     */
+    public Game(Room startingRoom, InputStream in, Output out)
+    {
+        this(startingRoom, in, out, createCommands());
+    }
+
+    /**
+     * Create a game session in an existing map, with its own commands.
+     * Several sessions can share the same registry of commands.
+     * 
+     * @param startingRoom The room the player starts in.
+     * @param in The stream commands are read from, or null if they are
+     *           handed to processLine() instead.
+     * @param out Where all game output is written to.
+     * @param commands The handlers of the commands of the game.
+     */
+    public Game(Room startingRoom, InputStream in, Output out, CommandRegistry commands)
+    {
+        if(GeneratedWorld.worldOf(startingRoom) != null) {
+            // remembering every room of an endless walk would keep them all.
+            player = new Player(startingRoom, GeneratedWorld.HISTORY_CAPACITY, true);
+        }
+        else {
+            player = new Player(startingRoom);
+        }
+        player.setCarryCapacity(CARRY_CAPACITY);
+        parser = in == null ? new Parser(out, commands) : new Parser(in, out, commands);
+        this.out = out;
+        this.commands = commands;
+    }
+
+    /**
+     * Create a game session whose input is read elsewhere, such as by a
+     * server that reads many clients on one thread, and handed to
+     * processLine(). The session is started with start(), and ended with
+     * finish() once a line has ended it.
+     * 
+     * @param startingRoom The room the player starts in.
+     * @param out Where all game output is written to.
+     * @param commands The handlers of the commands of the game.
+     */
+    public Game(Room startingRoom, Output out, CommandRegistry commands)
+    {
+        this(startingRoom, (InputStream) null, out, commands);
+    }
+
+    /**
+     * @return The carry capacity given with -Dzuul.carryCapacity, or 0 if
+     *         none or no sensible one was given.
+     */
+    private static double carryCapacity()
+    {
+        String pounds = System.getProperty("zuul.carryCapacity");
+        if(pounds == null) {
+            return 0;
+        }
+        try {
+            double capacity = Double.parseDouble(pounds);
+            if(capacity >= 0) {
+                return capacity;
+            }
+        }
+        catch(NumberFormatException e) {
+            // reported below.
+        }
+        System.err.println("Ignoring zuul.carryCapacity " + pounds + ": not a weight in pounds");
+        return 0;
+    }
+
+    /**
+     * Create a registry holding the handlers of all command words.
+     * 
+     * @return The registry, to which plugins may add more verbs.
+     */
+    public static CommandRegistry createCommands()
+    {
+        CommandRegistry commands = new CommandRegistry();
+        commands.register(CommandWord.UNKNOWN, (game, command) -> {
+            String verb = command.getFirstWord();
+            List<String> choices = verb == null ? List.of() : game.parser.getCompletions(verb);
+            if(choices.size() > 1) {
+                game.out.println("Did you mean " + String.join(" or ", choices) + "?");
+            }
+            else {
+                game.out.println("I don't know what you mean...");
+            }
+            return false;
+        });
+        commands.register(CommandWord.HELP, (game, command) -> {
+            game.printHelp();
+            return false;
+        });
+        commands.register(CommandWord.GO, (game, command) -> {
+            game.goRoom(command);
+            return false;
+        });
+        commands.register(CommandWord.LOOK, (game, command) -> {
+            game.look();
+            return false;
+        });
+        commands.register(CommandWord.ITEMS, (game, command) -> {
+            game.items();
+            return false;
+        });
+        commands.register(CommandWord.TAKE, (game, command) -> {
+            game.take(command);
+            return false;
+        });
+        commands.register(CommandWord.DROP, (game, command) -> {
+            game.drop(command);
+            return false;
+        });
+        commands.register(CommandWord.BACK, (game, command) -> {
+            game.back();
+            return false;
+        });
+        commands.register(CommandWord.ROUTE, (game, command) -> {
+            game.route(command);
+            return false;
+        });
+        commands.register(CommandWord.SEARCH, (game, command) -> {
+            game.search(command);
+            return false;
+        });
+        commands.register(CommandWord.FIND, (game, command) -> {
+            game.search(command);
+            return false;
+        });
+        commands.register(CommandWord.STATS, (game, command) -> {
+            game.stats();
+            return false;
+        });
+        commands.register(CommandWord.QUIT, (game, command) -> game.quit(command));
+        return commands;
     }
 
     /**
      * Create all the rooms and link their exits together.
+     * 
+     * @return The room in which players start.
      */
-    private void createRooms()
+    public static Room createRooms()
     {
         Room bedroom, livingRoom, kitchen, outside, station, train, city, dome;
       
         // create the rooms
-        bedroom = new Room("in your childhood bedroom, where you always hoped that one day you would amount to something greater");
-        livingRoom = new Room("in the living room");
-        kitchen = new Room("in the family kitchen. Usually, there's some snacks left on the table");
-        outside = new Room("outside");
-        station = new Room("at your local subway station");
-        train = new Room("on a crowded, noisy subway train");
-        city = new Room("in the middle of a sprawling uptopia, with dizzyingly tall skyscrapers and flying cars whizzing by");
-        dome = new Room("in a giant, imposing glass DOME, full of other penguins pummeling each other with the most comical of weapons");
+        bedroom = new Room("bedroom", "in your childhood bedroom, where you always hoped that one day you would amount to something greater");
+        livingRoom = new Room("livingroom", "in the living room");
+        kitchen = new Room("kitchen", "in the family kitchen. Usually, there's some snacks left on the table");
+        outside = new Room("outside", "outside");
+        station = new Room("station", "at your local subway station");
+        train = new Room("train", "on a crowded, noisy subway train");
+        city = new Room("city", "in the middle of a sprawling uptopia, with dizzyingly tall skyscrapers and flying cars whizzing by");
+        dome = new Room("dome", "in a giant, imposing glass DOME, full of other penguins pummeling each other with the most comical of weapons");
         
         // initialise room exits
         bedroom.setExit("downstairs", livingRoom);
@@ -75,14 +248,77 @@ public class Game
         station.addItem("guitar", "an acoustic guitar, probably left behind by your friend Dave", 3.5);
         train.addItem("sword", "the Master Sword? THE Master Sword? Left behind on a train? Well this is getting ridiculous", 10.0);
         
-        player = new Player(bedroom);
+        return bedroom;
+    }
+
+    /**
+     * @return The player of this game.
+     */
+    public Player getPlayer()
+    {
+        return player;
+    }
+
+    /**
+     * @return Where the output of this game is written to.
+     */
+    public Output getOutput()
+    {
+        return out;
+    }
+
+    /**
+     * @return The handlers of the commands of this game, with which
+     *         plugins can register more verbs.
+     */
+    public CommandRegistry getCommands()
+    {
+        return commands;
+    }
+
+    /**
+     * Save everything that changes the game in a journal from now on.
+     * @param journal The journal, or null to stop saving.
+     */
+    public void setJournal(Journal journal)
+    {
+        this.journal = journal;
     }
 
     /**
      *  Main play routine.  Loops until end of play.
+     *  With -Dzuul.journal=<directory>, the game is saved in the journal
+     *  kept in that directory, and carries on from where it was left.
      */
     public void play() 
     {            
+        String directory = System.getProperty("zuul.journal");
+        if(directory != null) {
+            try {
+                new Journal(Path.of(directory), this);
+            }
+            catch(IOException | IllegalArgumentException e) {
+                out.println("The game saved in " + directory + " can't be restored: " + e.getMessage());
+                out.flush();
+                return;
+            }
+        }
+        try {
+            playToEnd();
+        }
+        finally {
+            if(journal != null) {
+                journal.close();
+                journal = null;
+            }
+        }
+    }
+
+    /**
+     * Loop until end of play.
+     */
+    private void playToEnd()
+    {
         printWelcome();
 
         // Enter the main command loop.  Here we repeatedly read commands and
@@ -90,10 +326,86 @@ public class Game
                 
         boolean finished = false;
         while (! finished) {
+            showEvents();
             Command command = parser.getCommand();
             finished = processCommand(command);
         }
-        System.out.println("Thank you for playing.  Good bye.");
+        finish();
+    }
+
+    /**
+     * Start a game whose input is handed to processLine(): welcome the
+     * player and ask for their first command.
+     */
+    public void start()
+    {
+        printWelcome();
+        prompt();
+    }
+
+    /**
+     * Ask the player for their next command, and send everything written
+     * so far. Anything other players have done meanwhile is shown first.
+     */
+    public void prompt()
+    {
+        showEvents();
+        parser.prompt();
+    }
+
+    /**
+     * Let the player see what other players in the same room do, and
+     * let them see what the player does.
+     * 
+     * @param bus The bus events are published on.
+     * @param playerName What other players see the player as.
+     * @param wakeup What to run when there are events to show (see
+     *               Subscriber), or null to show them before each prompt.
+     */
+    public void subscribe(EventBus bus, String playerName, Runnable wakeup)
+    {
+        events = bus;
+        player.setName(playerName);
+        player.setSubscriber(new Subscriber(wakeup));
+        announce(player.getCurrentRoom(), "appeared.");
+    }
+
+    /**
+     * @return Whether other players have done something the player
+     *         hasn't been shown yet.
+     */
+    public boolean hasEvents()
+    {
+        Subscriber subscriber = player.getSubscriber();
+        return subscriber != null && subscriber.hasEvents();
+    }
+
+    /**
+     * Show the player what other players have done since they last looked.
+     */
+    public void showEvents()
+    {
+        Subscriber subscriber = player.getSubscriber();
+        if(subscriber != null) {
+            subscriber.show(out);
+        }
+    }
+
+    /**
+     * Say goodbye to the player, once a command has ended the game.
+     */
+    public void finish()
+    {
+        if(events != null) {
+            announce(player.getCurrentRoom(), "left the game.");
+            player.setSubscriber(null);
+            events = null;
+        }
+        if(Metrics.ENABLED) {
+            reportMetrics();
+        }
+        out.println("Thank you for playing.  Good bye.");
+        out.flush();
     }
 
     /**
@@ -101,59 +413,94 @@ public class Game
      */
     private void printWelcome()
     {
-        System.out.println();
-        System.out.println("Welcome to PENGUIN DOME");
-        System.out.println("PENGUIN DOME is an absolutely ludicrous text-based adventure game.");
-        System.out.println("Type '" + CommandWord.HELP + "' if you need help.");
-        System.out.println();
+        out.println();
+        out.println("Welcome to PENGUIN DOME");
+        out.println("PENGUIN DOME is an absolutely ludicrous text-based adventure game.");
+        out.println("Type '" + CommandWord.HELP + "' if you need help.");
+        out.println();
         look();
     }
 
+    /**
+     * Interpret a line of input as a command and process it. This lets
+     * commands be fed to the game without a user typing them.
+     * @param inputLine The line to interpret.
+     * @return true If the command ends the game, false otherwise.
+     */
+    public boolean processLine(String inputLine)
+    {
+        return processCommand(parser.parseCommand(inputLine));
+    }
+
     /**
      * Given a command, process (that is: execute) the command.
      * @param command The command to be processed.
      * @return true If the command ends the game, false otherwise.
      */
-    private boolean processCommand(Command command) 
+    public boolean processCommand(Command command) 
     {
-        boolean wantToQuit = false;
-
-        CommandWord commandWord = command.getCommandWord();
-
-        switch (commandWord) {
-            case UNKNOWN:
-                System.out.println("I don't know what you mean...");
-                break;
-
-            case HELP:
-                printHelp();
-                break;
+        command = completeSecondWord(command);
+        if(command == null) {
+            return false;
+        }
+        if(!Metrics.ENABLED) {
+            return commands.dispatch(this, command);
+        }
+        if(unreportedCommands == null) {
+            unreportedCommands = new int[Metrics.VERB_SLOTS];
+        }
+        if(!Metrics.isSampled(commandsRun++)) {
+            unreportedCommands[Metrics.slot(command.getVerb())]++;
+            return commands.dispatch(this, command);
+        }
+        long started = System.nanoTime();
+        boolean finished = commands.dispatch(this, command);
+        Metrics metrics = Metrics.get();
+        metrics.commandTimed(command.getVerb(), System.nanoTime() - started);
+        metrics.commandsRun(unreportedCommands);
+        return finished;
+    }
 
+    /**
+     * Complete an abbreviated direction or item name in a command, so that
+     * "go ah" means "go ahead" and "take sw" means "take sword". If the
+     * abbreviation could mean more than one thing, ask which one.
+     * @param command The command as typed.
+     * @return The command with its second word completed, or null if the
+     *         second word was ambiguous.
+     */
+    private Command completeSecondWord(Command command)
+    {
+        if(!command.hasSecondWord()) {
+            return command;
+        }
+        PrefixTrie<String> names;
+        switch (command.getCommandWord()) {
             case GO:
-                goRoom(command);
+                names = player.getCurrentRoom().getExitNames();
                 break;
-                
-            case LOOK:
-                look();
-                break;
-            
             case TAKE:
-                take(command);
+                names = player.getCurrentRoom().getItemNames();
                 break;
-            
             case DROP:
-                drop(command);
-                break;
-                
-            case BACK:
-                back();
+                names = player.getItemNames();
                 break;
+            default:
+                return command;
+        }
 
-            case QUIT:
-                wantToQuit = quit(command);
-                break;
+        String word = command.getSecondWord();
+        String completed = names.complete(word);
+        if(completed != null) {
+            return completed.equals(word) ? command : new Command(command.getCommandWord(), completed);
+        }
+        List<String> choices = names.completions(word);
+        if(choices.size() > 1) {
+            out.println("Did you mean " + String.join(" or ", choices) + "?");
+            return null;
         }
-        return wantToQuit;
+        // nothing starts with it: let the command say so.
+        return command;
     }
 
     // implementations of user commands:
@@ -165,12 +512,12 @@ public class Game
      */
     private void printHelp() 
     {
-        System.out.println("You are a penguin. You've always aspired to become");
-        System.out.println("one of the great gladiators of the PENGUIN DOME");
-        System.out.println("who fight each other honorably, with some of the");
-        System.out.println("wackiest weapons known to penguinkind.");
-        System.out.println();
-        System.out.println("Your command words are:");
+        out.println("You are a penguin. You've always aspired to become");
+        out.println("one of the great gladiators of the PENGUIN DOME");
+        out.println("who fight each other honorably, with some of the");
+        out.println("wackiest weapons known to penguinkind.");
+        out.println();
+        out.println("Your command words are:");
         parser.showCommands();
     }
 
@@ -182,7 +529,7 @@ public class Game
     {
         if(!command.hasSecondWord()) {
             // if there is no second word, we don't know where to go...
-            System.out.println("Go where?");
+            out.println("Go where?");
             return;
         }
 
@@ -192,10 +539,14 @@ public class Game
         Room nextRoom = player.getCurrentRoom().getExit(direction);
 
         if (nextRoom == null) {
-            System.out.println("There is no door!");
+            out.println("There is no door!");
         }
         else {
+            Room previousRoom = player.getCurrentRoom();
             player.updateCurrentRoom(nextRoom);
+            record(Journal.GO, direction);
+            announce(previousRoom, "went " + direction + ".");
+            announce(nextRoom, "arrived.");
             look();
         }
     }
@@ -205,8 +556,8 @@ public class Game
      */
     private void look()
     {
-        System.out.println(player.getCurrentRoom().getLongDescription());
-        System.out.println(player.items());
+        out.println(player.getCurrentRoom().getLongDescription());
+        out.println(player.items());
     }
     
     /**
@@ -214,7 +565,7 @@ public class Game
      */
     private void items()
     {
-        System.out.println(player.items());
+        out.println(player.items());
     }
     
     /**
@@ -223,13 +574,24 @@ public class Game
     private void take(Command command)
     {
         if(!command.hasSecondWord()) {
-            System.out.println("Pick up what?");
+            out.println("Pick up what?");
             return;
         }
         
         String itemToTake = command.getSecondWord();
         
-        player.pickUpItem(itemToTake);
+        Item item = player.pickUpItem(itemToTake);
+        if(item != null) {
+            record(Journal.TAKE, itemToTake);
+            announce(player.getCurrentRoom(), "picked up " + item.getDescription() + ".");
+            out.println("You picked up " + item.getDescription() + "!");
+        }
+        else if(player.getCurrentRoom().getItem(itemToTake) != null) {
+            out.println("You can't carry that much. Drop something first.");
+        }
+        else {
+            out.println("You struggle to pick anything up.");
+        }
     }
     
     /**
@@ -239,13 +601,21 @@ public class Game
     private void drop(Command command)
     {
         if(!command.hasSecondWord()) {
-            System.out.println("Drop what?");
+            out.println("Drop what?");
             return;
         }
         
         String itemToDrop = command.getSecondWord();
         
-        player.dropItem(itemToDrop);
+        Item item = player.dropItem(itemToDrop);
+        if(item != null) {
+            record(Journal.DROP, itemToDrop);
+            announce(player.getCurrentRoom(), "dropped " + item.getDescription() + ".");
+            out.println("You dropped " + item.getDescription() + ".");
+        }
+        else {
+            out.println("You can't let go.");
+        }
     }
     
     /**
@@ -253,10 +623,133 @@ public class Game
      */
     private void back()
     {
+        Room previousRoom = player.getCurrentRoom();
         if(player.back())
         {
+            record(Journal.BACK, null);
+            announce(previousRoom, "left.");
+            announce(player.getCurrentRoom(), "arrived.");
             look();
         }
+        else {
+            out.println("You are already at the starting location and cannot go back further.");
+        }
+    }
+    
+    /**
+     * Tell the player the shortest way to the room named in the command.
+     */
+    private void route(Command command)
+    {
+        if(!command.hasSecondWord()) {
+            out.println("Route to where?");
+            return;
+        }
+
+        if(GeneratedWorld.worldOf(player.getCurrentRoom()) != null) {
+            // the map has no end, so there is no way to search all of it.
+            out.println("Nobody has ever mapped these parts. You'll have to find your own way.");
+            return;
+        }
+        RouteFinder routes = RouteFinder.forMap(player.getCurrentRoom());
+        Room destination = routes.getRoom(command.getSecondWord());
+        if(destination == null) {
+            out.println("You've never heard of a place called " + command.getSecondWord() + ".");
+            return;
+        }
+
+        List<String> route = routes.findRoute(player.getCurrentRoom(), destination);
+        if(route == null) {
+            out.println("There is no way to get there from here.");
+        }
+        else if(route.isEmpty()) {
+            out.println("You are already there!");
+        }
+        else {
+            out.println("To get there, go: " + String.join(" ", route));
+        }
+    }
+    
+    /**
+     * Tell the player which rooms mention the word in the command, in
+     * their descriptions or their items.
+     */
+    private void search(Command command)
+    {
+        if(!command.hasSecondWord()) {
+            out.println("Search for what?");
+            return;
+        }
+
+        if(GeneratedWorld.worldOf(player.getCurrentRoom()) != null) {
+            // the map has no end, so there is no way to search all of it.
+            out.println("Nobody has ever mapped these parts. You'll have to find your own way.");
+            return;
+        }
+        if(index == null) {
+            index = SearchIndex.of(player.getCurrentRoom());
+        }
+        List<Room> found = index.search(command.getSecondWord(), SearchIndex.DEFAULT_RESULTS);
+        if(found.isEmpty()) {
+            out.println("You've never heard of anything like " + command.getSecondWord() + ".");
+            return;
+        }
+        out.println("You remember hearing of " + command.getSecondWord() + ":");
+        for(Room room : found) {
+            if(room.getName() != null) {
+                out.println("  " + room.getShortDescription() + " (" + room.getName() + ")");
+            }
+            else {
+                out.println("  " + room.getShortDescription());
+            }
+        }
+    }
+    
+    /**
+     * Save a change to the game in the journal, if there is one.
+     */
+    private void record(byte type, String argument)
+    {
+        if(journal != null) {
+            journal.record(type, argument);
+        }
+    }
+
+    /**
+     * Tell the other players in a room what this player has done there.
+     * @param room The room.
+     * @param action What the player did, such as "went north.".
+     */
+    private void announce(Room room, String action)
+    {
+        if(events != null) {
+            events.publish(room, player.getSubscriber(), player.getName() + " " + action);
+        }
+    }
+
+    /**
+     * Add the commands this game has counted to the metrics.
+     */
+    private void reportMetrics()
+    {
+        if(unreportedCommands != null) {
+            Metrics.get().commandsRun(unreportedCommands);
+        }
+        parser.reportMetrics();
+    }
+
+    /**
+     * Print out what players have done and how long commands took.
+     */
+    private void stats()
+    {
+        if(Metrics.ENABLED) {
+            reportMetrics();
+            out.println(Metrics.get().report());
+        }
+        else {
+            out.println("No statistics are being kept. Start the game with -Dzuul.metrics=true to keep them.");
+        }
     }
     
     /** 
@@ -267,7 +760,7 @@ public class Game
     private boolean quit(Command command) 
     {
         if(command.hasSecondWord()) {
-            System.out.println("Quit what?");
+            out.println("Quit what?");
             return false;
         }
         else {
@@ -0,0 +1,411 @@
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A server that hosts many game sessions at once over one shared map.
+ *
+ * The rooms are created once when the server starts, by Game.createRooms()
+ * or from a world file, or made up as players explore (see GeneratedWorld).
+ * Players either all play in that one map, seeing
+ * each other's changes to it, or each get a private instance of it (see
+ * WorldInstance), which shares the rooms but keeps its own items.
+ * Every client that connects to the server's socket gets its own session
+ * (a Game with its own Player and Parser) that reads commands from and
+ * writes output to that client, one line at a time. Any telnet-style
+ * client can be used to play.
+ *
+ * Players are told what the others in the same room do (see EventBus).
+ * A session's thread waits for its client to type, so it shows what has
+ * happened when the client next does.
+ *
+ * A shared map is kept going between commands by a WorldScheduler, with
+ * wandering penguins and a train that comes and goes.
+ *
+ * A shared map can also be divided into regions, each with a thread of
+ * its own that runs the commands of the players in it (see ShardedWorld).
+ * A session's thread then only reads its client's commands and sends the
+ * replies, so that the players of a region are served one at a time. The
+ * scheduler, the event bus and moves into another region still change
+ * rooms from other threads, so rooms keep their own locks.
+ *
+ * Each session runs on its own thread. When the Java runtime supports
+ * virtual threads they are used, so that thousands of mostly idle sessions
+ * cost very little; otherwise small-stack platform threads are used.
+ *
+ * @author Michael Biondi
+ * @version 2026.10.18
+ */
+public class GameServer
+{
+    // The port used when none is given on the command line.
+    public static final int DEFAULT_PORT = 4242;
+    // How many connections may wait to be accepted at once.
+    private static final int ACCEPT_BACKLOG = 1024;
+    // Stack size of a session thread when virtual threads are not available.
+    private static final long SESSION_STACK_SIZE = 256 * 1024;
+    // Characters of output collected for a client before they are sent.
+    private static final int SESSION_BUFFER_SIZE = 2048;
+    // How a generated map is named on the command line, before its seed.
+    private static final String GENERATED_PREFIX = "generated:";
+
+    private ServerSocket serverSocket;
+    private Room startingRoom;
+    private boolean privateWorlds;
+    private CommandRegistry commands;
+    private ExecutorService sessions;
+    private AtomicInteger activeSessions;
+    private AtomicInteger players;      // players who have joined, to number them
+    private EventBus events;
+    private WorldScheduler scheduler;   // keeps the shared map going, or null
+    private ShardedWorld shards;        // runs the commands of a divided map, or null
+    private volatile boolean running;
+
+    /**
+     * Create a server listening on the given port of the local machine,
+     * and create the map all of its sessions will share.
+     *
+     * @param port The port to listen on, or 0 for any free port.
+     * @throws IOException If the port can't be opened.
+     */
+    public GameServer(int port) throws IOException
+    {
+        this(port, Game.createRooms());
+    }
+
+    /**
+     * Create a server listening on the given port of the local machine,
+     * whose sessions all share the given map.
+     *
+     * @param port The port to listen on, or 0 for any free port.
+     * @param startingRoom The room in which players start.
+     * @throws IOException If the port can't be opened.
+     */
+    public GameServer(int port, Room startingRoom) throws IOException
+    {
+        this(port, startingRoom, false);
+    }
+
+    /**
+     * Create a server listening on the given port of the local machine,
+     * whose sessions all share the given map or each get their own
+     * instance of it.
+     *
+     * @param port The port to listen on, or 0 for any free port.
+     * @param startingRoom The room in which players start.
+     * @param privateWorlds Whether each session gets its own instance of
+     *                      the map, rather than all sharing one.
+     * @throws IOException If the port can't be opened.
+     */
+    public GameServer(int port, Room startingRoom, boolean privateWorlds) throws IOException
+    {
+        this(port, startingRoom, privateWorlds, 0);
+    }
+
+    /**
+     * Create a server listening on the given port of the local machine,
+     * whose sessions all share the given map, divided into regions that
+     * each have a thread of their own, or each get their own instance of it.
+     *
+     * @param port The port to listen on, or 0 for any free port.
+     * @param startingRoom The room in which players start.
+     * @param privateWorlds Whether each session gets its own instance of
+     *                      the map, rather than all sharing one.
+     * @param shardCount The number of regions to divide a shared map into,
+     *                   or 0 to run commands on the sessions' own threads.
+     * @throws IOException If the port can't be opened.
+     * @throws IllegalArgumentException If a generated map is to be divided.
+     */
+    public GameServer(int port, Room startingRoom, boolean privateWorlds, int shardCount)
+        throws IOException
+    {
+        this.privateWorlds = privateWorlds;
+        commands = Game.createCommands();
+        serverSocket = new ServerSocket(port, ACCEPT_BACKLOG, InetAddress.getLoopbackAddress());
+        if(shardCount > 0 && !privateWorlds) {
+            // the regions' threads are only started once the port is open.
+            try {
+                shards = new ShardedWorld(startingRoom, shardCount);
+            }
+            catch(IllegalArgumentException e) {
+                serverSocket.close();
+                throw e;
+            }
+        }
+        this.startingRoom = startingRoom;
+        sessions = createSessionExecutor();
+        activeSessions = new AtomicInteger();
+        players = new AtomicInteger();
+        events = new EventBus();
+        if(GeneratedWorld.worldOf(startingRoom) == null) {
+            // index the map before anyone can move its items, and before
+            // the train takes the city out of reach.
+            SearchIndex.of(startingRoom);
+        }
+        if(!privateWorlds) {
+            scheduler = WorldScheduler.createFor(startingRoom, events);
+        }
+    }
+
+    /**
+     * Accept clients and start a session for each of them. This
+     * method returns once the server has been stopped.
+     */
+    public void serve()
+    {
+        running = true;
+        if(scheduler != null) {
+            scheduler.start();
+        }
+        while(running) {
+            try {
+                Socket client = serverSocket.accept();
+                sessions.execute(() -> runSession(client));
+            }
+            catch(IOException e) {
+                if(running) {
+                    System.err.println("Could not accept a client: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Stop accepting clients and end all sessions.
+     */
+    public void stop()
+    {
+        running = false;
+        try {
+            serverSocket.close();
+        }
+        catch(IOException e) {
+            // we are shutting down anyway.
+        }
+        sessions.shutdownNow();
+        if(shards != null) {
+            shards.shutdown();
+        }
+        events.close();
+        if(scheduler != null) {
+            scheduler.stop();
+        }
+    }
+
+    /**
+     * @return The port the server is listening on.
+     */
+    public int getPort()
+    {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return The handlers of the commands of all sessions, with which
+     *         plugins can register more verbs.
+     */
+    public CommandRegistry getCommands()
+    {
+        return commands;
+    }
+
+    /**
+     * @return The number of sessions currently being played.
+     */
+    public int getActiveSessions()
+    {
+        return activeSessions.get();
+    }
+
+    /**
+     * Make a private instance of a map for one player.
+     *
+     * @param startingRoom The room players start in, in the shared map.
+     * @return The starting room of the instance. A generated map gets a
+     *         new world made from the same seed.
+     */
+    public static Room createPrivateWorld(Room startingRoom)
+    {
+        GeneratedWorld generated = GeneratedWorld.worldOf(startingRoom);
+        if(generated != null) {
+            return new GeneratedWorld(generated.getSeed(), generated.getCacheSize()).getStartingRoom();
+        }
+        return new WorldInstance(startingRoom).getStartingRoom();
+    }
+
+    /**
+     * Play one client's game until they quit or disconnect.
+     *
+     * @param client The client's socket.
+     */
+    private void runSession(Socket client)
+    {
+        activeSessions.incrementAndGet();
+        try(Socket socket = client) {
+            if(shards != null) {
+                playSharded(socket);
+                return;
+            }
+            Output out = new BufferedOutput(socket.getOutputStream(), StandardCharsets.UTF_8,
+                                            SESSION_BUFFER_SIZE);
+            Room start = privateWorlds ? createPrivateWorld(startingRoom) : startingRoom;
+            Game game = new Game(start, socket.getInputStream(), out, commands);
+            game.subscribe(events, "Penguin " + players.incrementAndGet(), null);
+            game.play();
+        }
+        catch(IOException e) {
+            // the client went away; there is nobody left to tell.
+        }
+        finally {
+            activeSessions.decrementAndGet();
+        }
+    }
+
+    /**
+     * Play one client's game in a divided map: read each command here, have
+     * it run by the thread of the player's region, then send the reply.
+     * Joining and leaving the game are run by that thread too. The game
+     * writes into memory, so a slow client never holds up a region.
+     *
+     * @param socket The client's socket.
+     * @throws IOException If the client goes away.
+     */
+    private void playSharded(Socket socket) throws IOException
+    {
+        BufferedReader in = new BufferedReader(
+            new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        OutputStream client = socket.getOutputStream();
+        ByteArrayOutputStream replies = new ByteArrayOutputStream(SESSION_BUFFER_SIZE);
+        Output out = new BufferedOutput(replies, StandardCharsets.UTF_8, SESSION_BUFFER_SIZE);
+        Game game = new Game(startingRoom, out, commands);
+        String name = "Penguin " + players.incrementAndGet();
+        boolean finished = false;
+        try {
+            shards.submit(game, () -> {
+                game.subscribe(events, name, null);
+                game.start();
+                return null;
+            }).get();
+            while(!finished) {
+                replies.writeTo(client);
+                replies.reset();
+                String line = in.readLine();
+                finished = shards.processLine(game, line == null ? CommandWord.QUIT.toString() : line)
+                                 .get();
+                if(!finished) {
+                    game.prompt();
+                }
+            }
+        }
+        catch(InterruptedException e) {
+            // the server is being stopped.
+            Thread.currentThread().interrupt();
+        }
+        catch(ExecutionException e) {
+            System.err.println("A command failed: " + e.getCause());
+        }
+        finally {
+            finishSharded(game);
+        }
+        replies.writeTo(client);
+    }
+
+    /**
+     * Say goodbye to a player of a divided map, on their region's thread.
+     *
+     * @param game The player's game.
+     */
+    private void finishSharded(Game game)
+    {
+        try {
+            shards.submit(game, () -> {
+                game.finish();
+                return null;
+            }).get();
+        }
+        catch(InterruptedException e) {
+            // the server is being stopped.
+            Thread.currentThread().interrupt();
+        }
+        catch(ExecutionException e) {
+            System.err.println("A game could not be finished: " + e.getCause());
+        }
+    }
+
+    /**
+     * Create the executor that runs the sessions: one virtual thread per
+     * session if the runtime has them, or else one small platform thread.
+     *
+     * @return The executor for sessions.
+     */
+    private static ExecutorService createSessionExecutor()
+    {
+        try {
+            return (ExecutorService) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch(ReflectiveOperationException e) {
+            AtomicInteger count = new AtomicInteger();
+            ThreadFactory factory = task -> {
+                Thread thread = new Thread(null, task, "session-" + count.incrementAndGet(),
+                                           SESSION_STACK_SIZE);
+                thread.setDaemon(true);
+                return thread;
+            };
+            return Executors.newCachedThreadPool(factory);
+        }
+    }
+
+    /**
+     * Load the map named on the command line.
+     *
+     * @param world The path of a world file, or "generated:seed" for an
+     *              endless generated map.
+     * @return The room in which players start.
+     * @throws IOException If the world file can't be loaded.
+     */
+    public static Room loadWorld(String world) throws IOException
+    {
+        if(world.startsWith(GENERATED_PREFIX)) {
+            long seed = Long.parseLong(world.substring(GENERATED_PREFIX.length()));
+            return new GeneratedWorld(seed).getStartingRoom();
+        }
+        return new WorldFile(Path.of(world)).getStartingRoom();
+    }
+
+    /**
+     * Start a server from the command line.
+     *
+     * @param args The port to listen on, a world file or "generated:seed"
+     *             for an endless generated map (both optional), and
+     *             "private" to give every player their own instance of it
+     *             or "sharded" to divide it among a thread per processor.
+     * @throws IOException If the port can't be opened or the world can't be loaded.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        Room startingRoom = args.length > 1 ? loadWorld(args[1]) : Game.createRooms();
+        boolean privateWorlds = args.length > 2 && args[2].equals("private");
+        int shardCount = args.length > 2 && args[2].equals("sharded")
+            ? Runtime.getRuntime().availableProcessors() : 0;
+        GameServer server = new GameServer(port, startingRoom, privateWorlds, shardCount);
+        System.out.println("PENGUIN DOME is open on port " + server.getPort());
+        if(Game.CARRY_CAPACITY > 0) {
+            System.out.println("Players can carry " + Game.CARRY_CAPACITY + " lbs");
+        }
+        server.serve();
+    }
+}
@@ -0,0 +1,401 @@
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A map with no end, made up as players explore it.
+ *
+ * The rooms lie on a grid, and everything about a room - its description,
+ * which of its four neighbours it has passages to, and the items lying in
+ * it at first - is worked out from the world's seed and the room's
+ * coordinates alone. So a room doesn't have to exist until a player goes
+ * into it: going through an exit makes the room on the other side then.
+ * Rooms nobody has been into recently are forgotten, and made again, just
+ * the same, when someone comes back. However far players wander, only the
+ * most recently visited rooms (cacheSize of them) are kept, plus the rooms
+ * players are still holding on to.
+ *
+ * Two things must not be forgotten. A room a player is standing in (or can
+ * go back to) is still in use, so it is found again rather than made a
+ * second time, and there is only ever one room at each place. And a room
+ * whose items players have changed can't be made again from the seed, so
+ * it is kept for as long as the world is; the memory a world takes grows
+ * with the rooms players have changed, not with the rooms they have seen.
+ *
+ * The row y = 0 and every eighth column are roads whose passages are
+ * always open, so there is always a long way on from anywhere on them.
+ *
+ * A generated map has no end, so routes can't be found in it and games
+ * in it can't be saved in a Journal.
+ *
+ * @author Michael Biondi
+ * @version 2026.10.18
+ */
+public class GeneratedWorld
+{
+    // Rooms remembered when no cache size is given.
+    public static final int DEFAULT_CACHE_SIZE = 10_000;
+    // Rooms a player in a generated world remembers for going back.
+    public static final int HISTORY_CAPACITY = 100;
+    // The chance, in percent, that a passage between two rooms is open.
+    private static final int OPEN_PASSAGES = 60;
+    // The chance, in percent, that a room has items in it at first.
+    private static final int ROOMS_WITH_ITEMS = 25;
+    // The columns x = 0, ROAD_SPACING, 2 * ROAD_SPACING... are roads.
+    private static final int ROAD_SPACING = 8;
+
+    // The directions in order, with the step each takes on the grid.
+    private static final String[] DIRECTIONS = { "north", "east", "south", "west" };
+    private static final int[] STEP_X = { 0, 1, 0, -1 };
+    private static final int[] STEP_Y = { 1, 0, -1, 0 };
+    // Values mixed into a room's hash for each random choice.
+    private static final long DESCRIPTION = 1;
+    private static final long NORTH_PASSAGE = 2;
+    private static final long EAST_PASSAGE = 3;
+    private static final long ITEMS = 4;
+
+    private static final String[] ADJECTIVES = {
+        "windswept", "silent", "frozen", "misty", "crowded", "dark", "sunlit", "narrow"
+    };
+    private static final String[] PLACES = {
+        "ice field", "snow cave", "fishing hole", "crevasse", "igloo", "ridge", "glacier", "shore"
+    };
+    private static final ItemType[] ITEM_TYPES = {
+        ItemType.of("fish", "a frozen fish", 0.5),
+        ItemType.of("snowball", "a hard-packed snowball", 0.2),
+        ItemType.of("pebble", "a smooth pebble", 0.1),
+        ItemType.of("pick", "an ice pick", 2.0),
+        ItemType.of("mitten", "a lost mitten", 0.1)
+    };
+
+    private long seed;
+    private int cacheSize;
+    // The rooms visited most recently, least recently visited first.
+    private LinkedHashMap<Long, GeneratedRoom> recent;
+    // Every room that may still be in use, by place.
+    private HashMap<Long, RoomReference> live;
+    private ReferenceQueue<GeneratedRoom> collected;
+    // The rooms whose items have changed, by place; these are kept.
+    private HashMap<Long, GeneratedRoom> changed;
+    private long generated;     // rooms made so far, counting those made again
+
+    /**
+     * Create a world that remembers the usual number of rooms.
+     * @param seed The seed the whole map is worked out from.
+     */
+    public GeneratedWorld(long seed)
+    {
+        this(seed, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Create a world.
+     * @param seed The seed the whole map is worked out from.
+     * @param cacheSize The number of recently visited rooms to remember.
+     */
+    public GeneratedWorld(long seed, int cacheSize)
+    {
+        if(cacheSize < 1) {
+            throw new IllegalArgumentException("the cache must hold at least one room");
+        }
+        this.seed = seed;
+        this.cacheSize = cacheSize;
+        recent = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, GeneratedRoom> eldest)
+            {
+                return size() > GeneratedWorld.this.cacheSize;
+            }
+        };
+        live = new HashMap<>();
+        collected = new ReferenceQueue<>();
+        changed = new HashMap<>();
+    }
+
+    /**
+     * Return the generated world a room belongs to.
+     * @param room The room.
+     * @return The world, or null if the room isn't in a generated world.
+     */
+    public static GeneratedWorld worldOf(Room room)
+    {
+        return room instanceof GeneratedRoom ? ((GeneratedRoom) room).world : null;
+    }
+
+    /**
+     * @return The seed the map is worked out from.
+     */
+    public long getSeed()
+    {
+        return seed;
+    }
+
+    /**
+     * @return The number of recently visited rooms remembered.
+     */
+    public int getCacheSize()
+    {
+        return cacheSize;
+    }
+
+    /**
+     * @return The room players start in, at (0, 0).
+     */
+    public Room getStartingRoom()
+    {
+        return getRoom(0, 0);
+    }
+
+    /**
+     * Return the room at a place, making it if it isn't in use. The same
+     * object is returned for as long as the room is in use.
+     * @param x The room's column; east is higher.
+     * @param y The room's row; north is higher.
+     * @return The room.
+     */
+    public synchronized Room getRoom(int x, int y)
+    {
+        Long place = place(x, y);
+        GeneratedRoom room = recent.get(place);
+        if(room == null) {
+            forgetCollected();
+            room = changed.get(place);
+            if(room == null) {
+                RoomReference reference = live.get(place);
+                room = reference == null ? null : reference.get();
+            }
+            if(room == null) {
+                room = new GeneratedRoom(this, x, y);
+                live.put(place, new RoomReference(place, room, collected));
+                generated++;
+            }
+            recent.put(place, room);
+        }
+        return room;
+    }
+
+    /**
+     * @return The number of rooms made so far, counting every time a
+     *         forgotten room was made again.
+     */
+    public synchronized long getGeneratedCount()
+    {
+        return generated;
+    }
+
+    /**
+     * @return The number of rooms that may still be in use: the recently
+     *         visited ones, and those that haven't been collected yet.
+     */
+    public synchronized int getLiveRoomCount()
+    {
+        forgetCollected();
+        return live.size();
+    }
+
+    /**
+     * @return The number of rooms whose items have been changed.
+     */
+    public synchronized int getChangedRoomCount()
+    {
+        return changed.size();
+    }
+
+    /**
+     * Keep a room for good, because its items have changed.
+     */
+    private synchronized void keep(GeneratedRoom room)
+    {
+        changed.put(place(room.x, room.y), room);
+    }
+
+    /**
+     * Drop the references to rooms that have been garbage collected.
+     */
+    private void forgetCollected()
+    {
+        RoomReference reference;
+        while((reference = (RoomReference) collected.poll()) != null) {
+            live.remove(reference.place, reference);
+        }
+    }
+
+    /**
+     * @return Whether a passage between two neighbouring rooms is open.
+     * @param x The column of the room to the south or west.
+     * @param y The row of the room to the south or west.
+     * @param passage NORTH_PASSAGE or EAST_PASSAGE.
+     */
+    private boolean isOpen(int x, int y, long passage)
+    {
+        if(passage == EAST_PASSAGE ? y == 0 : Math.floorMod(x, ROAD_SPACING) == 0) {
+            return true;
+        }
+        return Math.floorMod(hash(x, y, passage), 100) < OPEN_PASSAGES;
+    }
+
+    /**
+     * @return A random number for one choice about a room, always the same
+     *         for the same seed, room and choice.
+     */
+    private long hash(int x, int y, long choice)
+    {
+        // SplitMix64's finalizer over the seed, place and choice.
+        long z = seed + x * 0x9E3779B97F4A7C15L + y * 0xC2B2AE3D27D4EB4FL + choice * 0x165667B19E3779F9L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * @return The key of a place in the maps of rooms.
+     */
+    private static Long place(int x, int y)
+    {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    /**
+     * A room of a generated world. Its exits are worked out when it is
+     * made; the rooms they lead to are found through the world each time.
+     */
+    private static class GeneratedRoom extends Room
+    {
+        private GeneratedWorld world;
+        private int x;
+        private int y;
+        private int passages;               // a bit for each direction with a passage
+        private List<String> directions;    // the directions of the open passages
+        private volatile boolean kept;      // whether the world keeps this room for good
+
+        private GeneratedRoom(GeneratedWorld world, int x, int y)
+        {
+            super(x + "," + y, describe(world, x, y));
+            this.world = world;
+            this.x = x;
+            this.y = y;
+            List<String> open = new ArrayList<>(DIRECTIONS.length);
+            for(int d = 0; d < DIRECTIONS.length; d++) {
+                if(hasPassage(d)) {
+                    passages |= 1 << d;
+                    open.add(DIRECTIONS[d]);
+                }
+            }
+            directions = Collections.unmodifiableList(open);
+            long items = world.hash(x, y, ITEMS);
+            if(Math.floorMod(items, 100) < ROOMS_WITH_ITEMS) {
+                ItemType type = ITEM_TYPES[(int) Math.floorMod(items >>> 8, (long) ITEM_TYPES.length)];
+                super.addItem(new Item(type, 1 + (int) Math.floorMod(items >>> 16, 3L)));
+            }
+        }
+
+        private static String describe(GeneratedWorld world, int x, int y)
+        {
+            long choice = world.hash(x, y, DESCRIPTION);
+            String adjective = ADJECTIVES[(int) Math.floorMod(choice, (long) ADJECTIVES.length)];
+            String place = PLACES[(int) Math.floorMod(choice >>> 8, (long) PLACES.length)];
+            return "in a " + adjective + " " + place;
+        }
+
+        /**
+         * @return Whether there is a passage in a direction, by number.
+         */
+        private boolean hasPassage(int direction)
+        {
+            switch(direction) {
+                case 0:
+                    return world.isOpen(x, y, NORTH_PASSAGE);
+                case 1:
+                    return world.isOpen(x, y, EAST_PASSAGE);
+                case 2:
+                    return world.isOpen(x, y - 1, NORTH_PASSAGE);
+                default:
+                    return world.isOpen(x - 1, y, EAST_PASSAGE);
+            }
+        }
+
+        @Override
+        public void setExit(String direction, Room neighbor)
+        {
+            throw new UnsupportedOperationException("the exits of a generated world can't be changed");
+        }
+
+        @Override
+        public void removeExit(String direction)
+        {
+            throw new UnsupportedOperationException("the exits of a generated world can't be changed");
+        }
+
+        @Override
+        public Room getExit(String direction)
+        {
+            for(int d = 0; d < DIRECTIONS.length; d++) {
+                if(DIRECTIONS[d].equals(direction)) {
+                    return (passages & (1 << d)) == 0 ? null
+                                                      : world.getRoom(x + STEP_X[d], y + STEP_Y[d]);
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public Collection<String> getExitDirections()
+        {
+            return directions;
+        }
+
+        @Override
+        public Item takeItem(String itemName, long maxWeightTenths)
+        {
+            keep();
+            return super.takeItem(itemName, maxWeightTenths);
+        }
+
+        @Override
+        public void addItem(Item itemToAdd)
+        {
+            keep();
+            super.addItem(itemToAdd);
+        }
+
+        @Override
+        public void removeItem(Item itemToRemove)
+        {
+            keep();
+            super.removeItem(itemToRemove);
+        }
+
+        /**
+         * Have the world keep this room, the first time its items are
+         * about to change.
+         */
+        private void keep()
+        {
+            if(!kept) {
+                world.keep(this);
+                kept = true;
+            }
+        }
+    }
+
+    /**
+     * A reference to a room that lets it be garbage collected, and
+     * remembers its place so that it can be forgotten once it has been.
+     */
+    private static class RoomReference extends WeakReference<GeneratedRoom>
+    {
+        private final Long place;
+
+        private RoomReference(Long place, GeneratedRoom room, ReferenceQueue<GeneratedRoom> queue)
+        {
+            super(room, queue);
+            this.place = place;
+        }
+    }
+}
@@ -1,14 +1,18 @@
 /**
  * An item, multiple of which can be stored in a room.
  *
+ * An item is a stack of one or more items of the same type (see ItemType),
+ * which holds their name, description and weight. Items can't be changed,
+ * and two items are equal when they have the same type and count, so
+ * items of the same type are interchangeable.
+ *
  * @author Michael Biondi
  * @version 2024.11.12
  */
-public class Item
+public final class Item
 {
-    private String name;
-    private String description;
-    private double weight;
+    private final ItemType type;
+    private final int count;
 
     /**
      * Constructor for items
@@ -18,66 +22,137 @@ public class Item
      */
     public Item(String name, String description, double weight)
     {
-        this.name = name;
-        this.description = description;
-        this.weight = weight;
+        this(ItemType.of(name, description, weight), 1);
     }
-    
+
     /**
-     * Return the short name of the item
+     * Constructor for a stack of items of one type
+     * @param type The type of the items
+     * @param count The number of items in the stack, at least 1
      */
-    public String getName()
+    public Item(ItemType type, int count)
+    {
+        if(count < 1) {
+            throw new IllegalArgumentException("a stack holds at least one item");
+        }
+        this.type = type;
+        this.count = count;
+    }
+
+    /**
+     * Return the type of the item
+     */
+    public ItemType getType()
     {
-        return name;
+        return type;
     }
-    
+
     /**
-     * Set a new name for the item
-     * 
-     * @param newName The new name for the item
+     * Return the number of items in this stack
      */
-    public void setName(String newName)
+    public int getCount()
     {
-        name = newName;
+        return count;
     }
-    
+
+    /**
+     * Return the short name of the item
+     */
+    public String getName()
+    {
+        return type.getName();
+    }
+
     /**
      * Return the description of the item
-     * 
+     *
      * @return The description of the item
      */
     public String getDescription()
     {
-        return description;
+        return type.getDescription();
     }
-    
+
     /**
-     * Set a new description for the item
+     * Return the weight of the item
      *
-     * @param newDescription The new description of the item
+     * @return The weight of all items in the stack in pounds
      */
-    public void setDescription(String newDescription)
+    public double getWeight()
     {
-        description = newDescription;
+        return getWeightTenths() / 10.0;
     }
-    
+
     /**
-     * Return the weight of the item
-     * 
-     * @return The weight of the item in pounds
+     * Return the weight of the item in tenths of a pound
+     *
+     * @return The weight of all items in the stack in tenths of a pound
      */
-    public double getWeight()
+    public long getWeightTenths()
+    {
+        return type.getWeightTenths() * count;
+    }
+
+    /**
+     * Return a stack with more or fewer items of the same type
+     *
+     * @param newCount The number of items in the new stack
+     * @return The stack
+     */
+    public Item withCount(int newCount)
+    {
+        return newCount == count ? this : new Item(type, newCount);
+    }
+
+    /**
+     * Append a line describing the item to a builder, for example
+     * "cardboard box (box), 0.1 lbs", or "cardboard box (box) x3, 0.3 lbs"
+     * for a stack.
+     *
+     * @param builder The builder to append to
+     */
+    public void appendInfo(StringBuilder builder)
     {
-        return weight;
+        builder.append(type.getDescription()).append(" (").append(type.getName()).append(')');
+        if(count > 1) {
+            builder.append(" x").append(count);
+        }
+        builder.append(", ");
+        appendWeight(builder, getWeightTenths());
     }
-    
+
     /**
-     * Set a new weight for the item
+     * Append a weight to a builder, for example "0.1 lbs".
      *
-     * @param newWeight The new weight of the item in pounds
+     * @param builder The builder to append to
+     * @param tenths The weight in tenths of a pound
      */
-    public void setWeight(double newWeight)
+    public static void appendWeight(StringBuilder builder, long tenths)
+    {
+        if(tenths < 0) {
+            builder.append('-');
+            tenths = -tenths;
+        }
+        builder.append(tenths / 10).append('.').append(tenths % 10).append(" lbs");
+    }
+
+    @Override
+    public boolean equals(Object other)
+    {
+        if(this == other) {
+            return true;
+        }
+        if(!(other instanceof Item)) {
+            return false;
+        }
+        Item item = (Item) other;
+        // there is only one of each item type, so types are compared by reference.
+        return type == item.type && count == item.count;
+    }
+
+    @Override
+    public int hashCode()
     {
-        weight = newWeight;
+        return type.hashCode() * 31 + count;
     }
 }
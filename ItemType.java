@@ -0,0 +1,117 @@
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A kind of item, such as "a coffee mug", with the name, description and
+ * weight that every item of that kind shares.
+ *
+ * Item types can't be changed, and there is only ever one of each: of()
+ * returns the existing type if one with the same name, description and
+ * weight has been made before. So however many coffee mugs are placed in
+ * a world, their strings are stored once, and comparing two types is as
+ * quick as comparing two references.
+ *
+ * Weights are kept as a whole number of tenths of a pound, the precision
+ * they are shown with, so adding them up never drifts and showing them
+ * needs no floating-point formatting.
+ *
+ * @author Michael Biondi
+ * @version 2026.10.18
+ */
+public final class ItemType
+{
+    // Every type made so far, each mapped to itself.
+    private static final ConcurrentHashMap<ItemType, ItemType> TYPES = new ConcurrentHashMap<>();
+
+    private final String name;
+    private final String description;
+    private final long weightTenths;   // the weight in tenths of a pound
+
+    private ItemType(String name, String description, long weightTenths)
+    {
+        this.name = name;
+        this.description = description;
+        this.weightTenths = weightTenths;
+    }
+
+    /**
+     * Return the item type with a name, description and weight, making it
+     * if there isn't one yet.
+     * @param name The short name of the item
+     * @param description The description of the item
+     * @param weight The weight of one item in pounds, which is rounded
+     *               to a tenth of a pound
+     * @return The item type.
+     */
+    public static ItemType of(String name, String description, double weight)
+    {
+        ItemType type = new ItemType(name, description, Math.round(weight * 10));
+        ItemType existing = TYPES.putIfAbsent(type, type);
+        return existing == null ? type : existing;
+    }
+
+    /**
+     * @return The number of different item types made so far.
+     */
+    public static int count()
+    {
+        return TYPES.size();
+    }
+
+    /**
+     * @return The short name of items of this type
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * @return The description of items of this type
+     */
+    public String getDescription()
+    {
+        return description;
+    }
+
+    /**
+     * @return The weight of one item of this type in pounds
+     */
+    public double getWeight()
+    {
+        return weightTenths / 10.0;
+    }
+
+    /**
+     * @return The weight of one item of this type in tenths of a pound
+     */
+    public long getWeightTenths()
+    {
+        return weightTenths;
+    }
+
+    @Override
+    public boolean equals(Object other)
+    {
+        if(this == other) {
+            return true;
+        }
+        if(!(other instanceof ItemType)) {
+            return false;
+        }
+        ItemType type = (ItemType) other;
+        return name.equals(type.name) && description.equals(type.description)
+               && weightTenths == type.weightTenths;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return (name.hashCode() * 31 + description.hashCode()) * 31 + Long.hashCode(weightTenths);
+    }
+
+    @Override
+    public String toString()
+    {
+        return name;
+    }
+}
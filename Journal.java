@@ -0,0 +1,391 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Saves a game as it is played, so that it can be brought back after a
+ * crash exactly as it was.
+ *
+ * Everything that changes the game (going somewhere, going back, taking
+ * and dropping items) is appended to a journal file as a small event.
+ * Events are collected in a buffer and written together: when the buffer
+ * is full, every few milliseconds, and when the journal is closed. Every
+ * so many events a snapshot of the whole game (the items in every room,
+ * and the player's rooms and inventory) is written, and the journal is
+ * started afresh, so bringing a game back never has to replay more than
+ * those events.
+ *
+ * Every event has a sequence number, and the snapshot records the last
+ * event it includes, so a crash while a snapshot is being written loses
+ * nothing. A half-written event at the end of the journal is ignored.
+ * Only what succeeded is saved, so an event that can't be replayed (an
+ * exit that is no longer there, say, because the world file has been
+ * edited) means the journal belongs to a different world, and opening it
+ * fails.
+ *
+ * A game played with Game.play() is saved in the journal named by
+ * -Dzuul.journal, and BatchRunner saves a scripted game when given a
+ * directory. The servers don't keep journals: their sessions don't say
+ * who is playing, so there is no telling which journal a new session
+ * should carry on from, and the rooms of a shared map are changed by all
+ * players at once.
+ *
+ * @author Michael Biondi
+ * @version 2026.10.18
+ */
+public class Journal
+{
+    // The kinds of events.
+    public static final byte GO = 'G';
+    public static final byte BACK = 'B';
+    public static final byte TAKE = 'T';
+    public static final byte DROP = 'D';
+
+    // Events between snapshots, unless told otherwise.
+    public static final int DEFAULT_SNAPSHOT_INTERVAL = 100_000;
+    // How often collected events are written, in milliseconds.
+    private static final long COMMIT_INTERVAL = 10;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // The first bytes of a snapshot file: "SNAP".
+    private static final int SNAPSHOT_MAGIC = 0x534E4150;
+    private static final String JOURNAL_FILE = "journal.log";
+    private static final String SNAPSHOT_FILE = "snapshot.bin";
+
+    private Path directory;
+    private Game game;
+    private List<Room> rooms;
+    private IdentityHashMap<Room, Integer> roomNumbers;
+    private FileChannel channel;
+    private ByteBuffer buffer;
+    private long sequence;
+    private int snapshotInterval;
+    private int eventsSinceSnapshot;
+    private boolean forceToDisk;
+    private Thread committer;
+    private volatile boolean open;
+
+    /**
+     * Open the journal kept in a directory. A newly created game is
+     * brought back to the state saved there (if any), and from then on
+     * everything that happens in the game is saved.
+     * @param directory The directory holding the journal.
+     * @param game A newly created game, whose player hasn't moved yet.
+     * @param snapshotInterval The number of events between snapshots.
+     * @param forceToDisk Whether each write should wait until the data
+     *                    is on disk, rather than only handed to the system.
+     * @throws IOException If the journal can't be read or written, or
+     *                     was saved in a different world.
+     */
+    public Journal(Path directory, Game game, int snapshotInterval, boolean forceToDisk) throws IOException
+    {
+        this.directory = directory;
+        this.game = game;
+        this.snapshotInterval = snapshotInterval;
+        this.forceToDisk = forceToDisk;
+        if(GeneratedWorld.worldOf(game.getPlayer().getCurrentRoom()) != null) {
+            throw new IllegalArgumentException("games in a generated world can't be journaled");
+        }
+        numberRooms(game.getPlayer().getCurrentRoom());
+        Files.createDirectories(directory);
+        restore();
+        channel = FileChannel.open(directory.resolve(JOURNAL_FILE), StandardOpenOption.CREATE,
+                                   StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        open = true;
+        committer = new Thread(this::commitRegularly, "journal-committer");
+        committer.setDaemon(true);
+        committer.start();
+        game.setJournal(this);
+    }
+
+    /**
+     * Open the journal kept in a directory, with the usual snapshot
+     * interval, without waiting for the disk on every write.
+     * @param directory The directory holding the journal.
+     * @param game A newly created game, whose player hasn't moved yet.
+     * @throws IOException If the journal can't be read or written.
+     */
+    public Journal(Path directory, Game game) throws IOException
+    {
+        this(directory, game, DEFAULT_SNAPSHOT_INTERVAL, false);
+    }
+
+    /**
+     * Save that something happened in the game.
+     * @param type The kind of event: GO, BACK, TAKE or DROP.
+     * @param argument The direction or item name, or null for BACK.
+     */
+    public synchronized void record(byte type, String argument)
+    {
+        byte[] bytes = argument == null ? new byte[0] : argument.getBytes(StandardCharsets.UTF_8);
+        int size = 8 + 1 + 2 + bytes.length;
+        if(buffer.remaining() < size) {
+            commit();
+        }
+        buffer.putLong(++sequence).put(type).putShort((short) bytes.length).put(bytes);
+        if(++eventsSinceSnapshot >= snapshotInterval) {
+            snapshot();
+        }
+    }
+
+    /**
+     * Write all collected events to the journal file.
+     */
+    public synchronized void commit()
+    {
+        if(buffer.position() == 0) {
+            return;
+        }
+        buffer.flip();
+        try {
+            while(buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if(forceToDisk) {
+                channel.force(false);
+            }
+        }
+        catch(IOException e) {
+            System.err.println("Could not write the journal: " + e.getMessage());
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Write a snapshot of the whole game and start the journal afresh.
+     */
+    public synchronized void snapshot()
+    {
+        commit();
+        Path file = directory.resolve(SNAPSHOT_FILE);
+        Path temporary = directory.resolve(SNAPSHOT_FILE + ".tmp");
+        try {
+            try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(temporary)))) {
+                writeSnapshot(out);
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel.truncate(0);
+            eventsSinceSnapshot = 0;
+        }
+        catch(IOException e) {
+            System.err.println("Could not write a snapshot: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Write everything still collected and close the journal.
+     */
+    public void close()
+    {
+        open = false;
+        committer.interrupt();
+        synchronized(this) {
+            commit();
+            try {
+                channel.close();
+            }
+            catch(IOException e) {
+                // nothing more can be saved anyway.
+            }
+        }
+    }
+
+    /**
+     * @return The sequence number of the last event saved.
+     */
+    public synchronized long getSequence()
+    {
+        return sequence;
+    }
+
+    /**
+     * Write collected events every few milliseconds, so that events from
+     * many commands go to the file in one write.
+     */
+    private void commitRegularly()
+    {
+        while(open) {
+            try {
+                Thread.sleep(COMMIT_INTERVAL);
+            }
+            catch(InterruptedException e) {
+                return;
+            }
+            commit();
+        }
+    }
+
+    /**
+     * Number all rooms that can be reached from the starting room, in the
+     * order they are first reached, so that snapshots can refer to rooms.
+     */
+    private void numberRooms(Room start)
+    {
+        rooms = new ArrayList<>();
+        roomNumbers = new IdentityHashMap<>();
+        rooms.add(start);
+        roomNumbers.put(start, 0);
+        for(int i = 0; i < rooms.size(); i++) {
+            Room room = rooms.get(i);
+            for(String direction : room.getExitDirections()) {
+                Room neighbor = room.getExit(direction);
+                if(!roomNumbers.containsKey(neighbor)) {
+                    roomNumbers.put(neighbor, rooms.size());
+                    rooms.add(neighbor);
+                }
+            }
+        }
+    }
+
+    /**
+     * Bring the game back to the state saved in the directory: read the
+     * snapshot, then replay the events saved after it.
+     */
+    private void restore() throws IOException
+    {
+        Path file = directory.resolve(SNAPSHOT_FILE);
+        if(Files.exists(file)) {
+            try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                readSnapshot(in);
+            }
+        }
+        Path journal = directory.resolve(JOURNAL_FILE);
+        if(!Files.exists(journal)) {
+            return;
+        }
+        long validLength = 0;
+        try(FileChannel in = FileChannel.open(journal, StandardOpenOption.READ)) {
+            ByteBuffer events = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            Player player = game.getPlayer();
+            while(events.remaining() >= 11) {
+                long eventSequence = events.getLong();
+                byte type = events.get();
+                int length = events.getShort();
+                if(events.remaining() < length) {
+                    break;
+                }
+                byte[] bytes = new byte[length];
+                events.get(bytes);
+                validLength = events.position();
+                if(eventSequence <= sequence) {
+                    continue;
+                }
+                String argument = new String(bytes, StandardCharsets.UTF_8);
+                boolean replayed = false;
+                switch(type) {
+                    case GO:
+                        Room next = player.getCurrentRoom().getExit(argument);
+                        if(next != null) {
+                            player.updateCurrentRoom(next);
+                            replayed = true;
+                        }
+                        break;
+                    case BACK:
+                        replayed = player.back();
+                        break;
+                    case TAKE:
+                        replayed = player.pickUpItem(argument) != null;
+                        break;
+                    case DROP:
+                        replayed = player.dropItem(argument) != null;
+                        break;
+                }
+                if(!replayed) {
+                    throw new IOException("event " + eventSequence + " (" + (char) type + " " + argument
+                                          + ") can't be replayed; the journal was saved in a different world");
+                }
+                sequence = eventSequence;
+                eventsSinceSnapshot++;
+            }
+        }
+        // forget a half-written event, so new events follow the last whole one.
+        try(FileChannel out = FileChannel.open(journal, StandardOpenOption.WRITE)) {
+            out.truncate(validLength);
+        }
+    }
+
+    /**
+     * Write the state of the game.
+     */
+    private void writeSnapshot(DataOutputStream out) throws IOException
+    {
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeLong(sequence);
+        out.writeInt(rooms.size());
+        for(Room room : rooms) {
+            writeItems(out, room.getItems());
+        }
+        Player player = game.getPlayer();
+        List<Room> history = player.getRoomsSequence();
+        out.writeInt(history.size());
+        for(Room room : history) {
+            out.writeInt(roomNumbers.get(room));
+        }
+        writeItems(out, player.getItems());
+    }
+
+    /**
+     * Read the state of the game written by writeSnapshot.
+     */
+    private void readSnapshot(DataInputStream in) throws IOException
+    {
+        if(in.readInt() != SNAPSHOT_MAGIC) {
+            throw new IOException("not a snapshot");
+        }
+        sequence = in.readLong();
+        int roomCount = in.readInt();
+        if(roomCount != rooms.size()) {
+            throw new IOException("the snapshot was taken in a different world");
+        }
+        for(Room room : rooms) {
+            for(Item item : room.getItems()) {
+                room.removeItem(item);
+            }
+            for(Item item : readItems(in)) {
+                room.addItem(item);
+            }
+        }
+        int historySize = in.readInt();
+        List<Room> history = new ArrayList<>(historySize);
+        for(int i = 0; i < historySize; i++) {
+            history.add(rooms.get(in.readInt()));
+        }
+        game.getPlayer().restore(history, readItems(in));
+    }
+
+    private static void writeItems(DataOutputStream out, List<Item> items) throws IOException
+    {
+        out.writeInt(items.size());
+        for(Item item : items) {
+            ItemType type = item.getType();
+            out.writeUTF(type.getName());
+            out.writeUTF(type.getDescription());
+            out.writeDouble(type.getWeight());
+            out.writeInt(item.getCount());
+        }
+    }
+
+    private static List<Item> readItems(DataInputStream in) throws IOException
+    {
+        int count = in.readInt();
+        List<Item> items = new ArrayList<>(count);
+        for(int i = 0; i < count; i++) {
+            ItemType type = ItemType.of(in.readUTF(), in.readUTF(), in.readDouble());
+            items.add(new Item(type, in.readInt()));
+        }
+        return items;
+    }
+}
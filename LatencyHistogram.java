@@ -0,0 +1,138 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of durations in nanoseconds, in the style of HdrHistogram:
+ * every power of two is split into 16 equal buckets, so any duration from
+ * a nanosecond to hours is counted within about 6% of its value, in a
+ * fixed 976 counters.
+ *
+ * Recording a duration costs an atomic increment and an addition, never
+ * allocates, and any number of threads may record at once. Percentiles are read
+ * from the counters as they are at that moment.
+ *
+ * @author Michael Biondi
+ * @version 2026.10.18
+ */
+public class LatencyHistogram
+{
+    // Buckets per power of two, as a number of bits.
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private AtomicLongArray counts;
+    private LongAdder total;        // the sum of all durations recorded
+
+    /**
+     * Create an empty histogram.
+     */
+    public LatencyHistogram()
+    {
+        counts = new AtomicLongArray(BUCKETS);
+        total = new LongAdder();
+    }
+
+    /**
+     * Count one duration.
+     * @param nanos The duration in nanoseconds; negative durations count as 0.
+     */
+    public void record(long nanos)
+    {
+        long value = Math.max(nanos, 0);
+        counts.incrementAndGet(bucket(value));
+        total.add(value);
+    }
+
+    /**
+     * @return The number of durations recorded.
+     */
+    public long getCount()
+    {
+        long count = 0;
+        for(int i = 0; i < BUCKETS; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * @return The mean of the durations recorded in nanoseconds, or 0 if
+     *         there are none.
+     */
+    public double getMean()
+    {
+        long count = getCount();
+        return count == 0 ? 0 : total.doubleValue() / count;
+    }
+
+    /**
+     * Return the duration that a given percentage of the durations
+     * recorded are no longer than.
+     * @param percentile The percentage, from 0 to 100.
+     * @return The duration in nanoseconds (the middle of its bucket), or 0
+     *         if nothing has been recorded.
+     */
+    public long getValueAtPercentile(double percentile)
+    {
+        long[] snapshot = new long[BUCKETS];
+        long count = 0;
+        for(int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        if(count == 0) {
+            return 0;
+        }
+        long wanted = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for(int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if(seen >= wanted) {
+                return middle(i);
+            }
+        }
+        return middle(BUCKETS - 1);
+    }
+
+    /**
+     * @return The longest duration recorded (the middle of its bucket),
+     *         or 0 if nothing has been recorded.
+     */
+    public long getMax()
+    {
+        for(int i = BUCKETS - 1; i >= 0; i--) {
+            if(counts.get(i) > 0) {
+                return middle(i);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return The bucket a duration is counted in.
+     */
+    private static int bucket(long value)
+    {
+        if(value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return The duration in the middle of a bucket.
+     */
+    private static long middle(int bucket)
+    {
+        if(bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowest + ((1L << shift) >>> 1);
+    }
+}
@@ -0,0 +1,234 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Plays many clients against a game server at once, to measure how many
+ * connections it takes and how many commands a second it answers.
+ *
+ * Every client walks downstairs, upstairs and looks around, over and
+ * over, sending its next command as soon as the answer to the last one
+ * (ending with the prompt "> ") has arrived. The clients are shared out
+ * among a few threads, each waiting on all of its clients at once with a
+ * Selector, so the generator itself needs no thread per client.
+ *
+ * Run the "main" method with a port to test a server that is already
+ * running, or with port 0 to compare GameServer and SelectorServer.
+ *
+ * @author Michael Biondi
+ * @version 2026.10.18
+ */
+public class LoadGenerator
+{
+    // The commands every client sends, in turn.
+    private static final String[] SCRIPT = { "go downstairs", "go upstairs", "look" };
+    private static final int DEFAULT_CONNECTIONS = 1000;
+    private static final int DEFAULT_SECONDS = 10;
+    // Time given to the server to warm up before measuring, in nanoseconds.
+    private static final long WARMUP_NANOS = 2_000_000_000L;
+
+    private InetSocketAddress address;
+    private int connections;
+    private byte[][] lines;             // the script, as sent
+    private LongAdder answered;         // commands answered while measuring
+    private LatencyHistogram latency;   // time from sending a command to its answer
+    private volatile boolean measuring;
+    private volatile boolean running;
+
+    /**
+     * Create a load generator.
+     * @param address The address of the server.
+     * @param connections The number of clients to play at once.
+     */
+    public LoadGenerator(InetSocketAddress address, int connections)
+    {
+        this.address = address;
+        this.connections = connections;
+        lines = new byte[SCRIPT.length][];
+        for(int i = 0; i < SCRIPT.length; i++) {
+            lines[i] = (SCRIPT[i] + "\n").getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Connect all clients, play for a while and print what was measured.
+     * @param label What is being measured, to print with the results.
+     * @param seconds How long to measure, after warming up.
+     * @throws IOException If the clients can't connect.
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    public void run(String label, int seconds) throws IOException, InterruptedException
+    {
+        answered = new LongAdder();
+        latency = new LatencyHistogram();
+        int threadCount = Math.max(1, Math.min(connections, Runtime.getRuntime().availableProcessors() / 2));
+        List<Selector> selectors = new ArrayList<>();
+        for(int i = 0; i < threadCount; i++) {
+            selectors.add(Selector.open());
+        }
+
+        long started = System.nanoTime();
+        List<SocketChannel> channels = new ArrayList<>(connections);
+        try {
+            for(int i = 0; i < connections; i++) {
+                SocketChannel channel = SocketChannel.open(address);
+                channel.configureBlocking(false);
+                channel.register(selectors.get(i % threadCount), SelectionKey.OP_READ, new Client());
+                channels.add(channel);
+            }
+            double connectSeconds = (System.nanoTime() - started) / 1e9;
+
+            running = true;
+            List<Thread> threads = new ArrayList<>();
+            for(Selector selector : selectors) {
+                Thread thread = new Thread(() -> play(selector), "load-" + threads.size());
+                thread.setDaemon(true);
+                thread.start();
+                threads.add(thread);
+            }
+            Thread.sleep(WARMUP_NANOS / 1_000_000);
+            measuring = true;
+            long measureStarted = System.nanoTime();
+            Thread.sleep(seconds * 1000L);
+            long measured = System.nanoTime() - measureStarted;
+            measuring = false;
+            running = false;
+            for(Selector selector : selectors) {
+                selector.wakeup();
+            }
+            for(Thread thread : threads) {
+                thread.join();
+            }
+
+            System.out.printf("%-28s %8d connections in %6.2f s (%8.0f/s)%n", label, connections,
+                              connectSeconds, connections / connectSeconds);
+            System.out.printf("%-28s %8.0f commands/s, latency p50 %.0f us, p99 %.0f us, max %.0f us%n",
+                              label, answered.sum() / (measured / 1e9),
+                              latency.getValueAtPercentile(50) / 1e3,
+                              latency.getValueAtPercentile(99) / 1e3, latency.getMax() / 1e3);
+        }
+        finally {
+            for(SocketChannel channel : channels) {
+                channel.close();
+            }
+            for(Selector selector : selectors) {
+                selector.close();
+            }
+        }
+    }
+
+    /**
+     * Play the clients of one selector until told to stop.
+     */
+    private void play(Selector selector)
+    {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+        try {
+            while(running) {
+                selector.select();
+                Iterator<SelectionKey> ready = selector.selectedKeys().iterator();
+                while(ready.hasNext()) {
+                    SelectionKey key = ready.next();
+                    ready.remove();
+                    SocketChannel channel = (SocketChannel) key.channel();
+                    Client client = (Client) key.attachment();
+                    buffer.clear();
+                    if(channel.read(buffer) < 0) {
+                        key.cancel();
+                        continue;
+                    }
+                    buffer.flip();
+                    if(client.isAnswered(buffer)) {
+                        if(measuring && client.sentAt != 0) {
+                            answered.increment();
+                            latency.record(System.nanoTime() - client.sentAt);
+                        }
+                        ByteBuffer line = ByteBuffer.wrap(lines[client.next]);
+                        client.next = (client.next + 1) % lines.length;
+                        client.sentAt = System.nanoTime();
+                        while(line.hasRemaining()) {
+                            channel.write(line);
+                        }
+                    }
+                }
+            }
+        }
+        catch(IOException e) {
+            if(running) {
+                System.err.println("A client failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Test a server from the command line.
+     * @param args The port of a server on this machine (if none is given,
+     *             or 0, a GameServer and a SelectorServer are started
+     *             here and compared), the number of clients and how many
+     *             seconds to measure for.
+     * @throws IOException If a server can't be started or reached.
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException
+    {
+        int connections = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_CONNECTIONS;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_SECONDS;
+        InetAddress host = InetAddress.getLoopbackAddress();
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+        if(port != 0) {
+            new LoadGenerator(new InetSocketAddress(host, port), connections).run("server", seconds);
+            return;
+        }
+
+        GameServer blocking = new GameServer(0);
+        Thread accepting = new Thread(blocking::serve, "accept");
+        accepting.setDaemon(true);
+        accepting.start();
+        new LoadGenerator(new InetSocketAddress(host, blocking.getPort()), connections)
+            .run("GameServer", seconds);
+        blocking.stop();
+
+        SelectorServer selecting = new SelectorServer(0, Game.createRooms(), false);
+        accepting = new Thread(selecting::serve, "accept");
+        accepting.setDaemon(true);
+        accepting.start();
+        new LoadGenerator(new InetSocketAddress(host, selecting.getPort()), connections)
+            .run("SelectorServer", seconds);
+        selecting.stop();
+    }
+
+    /**
+     * Where one client is in its script, and how far the answer it is
+     * waiting for has arrived.
+     */
+    private static class Client
+    {
+        private int next;           // the line of the script to send next
+        private long sentAt;        // when the last command was sent, or 0
+        private byte last;          // the last byte received
+
+        /**
+         * Look at bytes received, to see whether they finish an answer.
+         * @return true if they end with the prompt.
+         */
+        private boolean isAnswered(ByteBuffer received)
+        {
+            int end = received.limit();
+            if(end == 0) {
+                return false;
+            }
+            byte beforeLast = end > 1 ? received.get(end - 2) : last;
+            last = received.get(end - 1);
+            return beforeLast == '>' && last == ' ';
+        }
+    }
+}
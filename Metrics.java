@@ -0,0 +1,321 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts what players do and how long it takes: how many commands of
+ * each kind are run and a latency histogram of each, how long parsing
+ * takes, how often players move and items change hands, and how often
+ * each room is visited (the rooms of a generated world, which never ends,
+ * are counted together).
+ *
+ * Metrics are switched on by starting Java with -Dzuul.metrics=true, and
+ * are written to a file every minute as well if -Dzuul.metrics.file names
+ * one (-Dzuul.metrics.period sets the seconds between writes). Every place
+ * that records a metric first checks ENABLED, which is a constant, so when
+ * metrics are off the checks are removed by the compiler and cost nothing.
+ * When they are on, games and parsers count their commands in plain
+ * arrays of their own and add them to the shared counters only now and
+ * then. Reading the clock costs more than running a cheap command, so only
+ * one command (and one parse) in every SAMPLE_INTERVAL is timed, and the
+ * shared counters are updated at the same time. The latency histograms are
+ * made from the timed commands; the counts include all of them.
+ *
+ * The "stats" command shows the same report as the file.
+ *
+ * @author Michael Biondi
+ * @version 2026.10.18
+ */
+public final class Metrics
+{
+    // Whether metrics are recorded at all.
+    public static final boolean ENABLED = Boolean.getBoolean("zuul.metrics");
+    // One in this many commands (a power of two) is timed.
+    public static final int SAMPLE_INTERVAL = 64;
+    // Rooms shown in the report, most visited first.
+    private static final int REPORTED_ROOMS = 10;
+    // The names under which visits to rooms without one, and to the rooms
+    // of generated worlds, are counted.
+    private static final String UNNAMED_ROOMS = "(unnamed rooms)";
+    private static final String GENERATED_ROOMS = "(generated rooms)";
+    // Commands of verbs added by plugins are counted together, after the
+    // CommandWords.
+    private static final int OTHER_VERBS = CommandWord.values().length;
+    // The length of an array of command counts.
+    public static final int VERB_SLOTS = OTHER_VERBS + 1;
+    private static final Metrics METRICS = ENABLED ? new Metrics() : null;
+
+    private LongAdder[] counts;             // commands run, by verb number
+    private LatencyHistogram[] commands;    // timed commands, by verb number
+    private LongAdder lines;
+    private LatencyHistogram parsing;
+    private LongAdder pickUps;
+    private LongAdder drops;
+    private LongAdder itemsTaken;
+    private LongAdder itemsAdded;
+    // visits by room name, so that the views of the same room in world
+    // instances are counted together. Rooms without a name share one count,
+    // and so do the rooms of generated worlds, which are named after their
+    // places: a count for each would keep growing as long as players explore.
+    private ConcurrentHashMap<String, LongAdder> visits;
+    private ScheduledExecutorService dumper;
+
+    private Metrics()
+    {
+        counts = new LongAdder[VERB_SLOTS];
+        commands = new LatencyHistogram[VERB_SLOTS];
+        for(int i = 0; i < commands.length; i++) {
+            counts[i] = new LongAdder();
+            commands[i] = new LatencyHistogram();
+        }
+        lines = new LongAdder();
+        parsing = new LatencyHistogram();
+        pickUps = new LongAdder();
+        drops = new LongAdder();
+        itemsTaken = new LongAdder();
+        itemsAdded = new LongAdder();
+        visits = new ConcurrentHashMap<>();
+
+        String file = System.getProperty("zuul.metrics.file");
+        if(file != null) {
+            long period = Long.getLong("zuul.metrics.period", 60);
+            startDumping(Path.of(file), period);
+        }
+    }
+
+    /**
+     * @return The metrics of this program, or null if metrics are off.
+     */
+    public static Metrics get()
+    {
+        return METRICS;
+    }
+
+    /**
+     * Decide whether to time the next command or parse, given how many
+     * the caller has done so far.
+     * @param done The number of commands or parses done so far.
+     * @return Whether to time the next one.
+     */
+    public static boolean isSampled(int done)
+    {
+        return (done & (SAMPLE_INTERVAL - 1)) == 0;
+    }
+
+    /**
+     * @return The place of a verb in an array of command counts.
+     */
+    public static int slot(int verb)
+    {
+        return Math.min(verb, OTHER_VERBS);
+    }
+
+    /**
+     * Add commands counted by a game to the shared counters.
+     * @param unreported The number of commands run, by slot(verb); the
+     *                   counts are set back to 0.
+     */
+    public void commandsRun(int[] unreported)
+    {
+        for(int i = 0; i < VERB_SLOTS; i++) {
+            if(unreported[i] != 0) {
+                counts[i].add(unreported[i]);
+                unreported[i] = 0;
+            }
+        }
+    }
+
+    /**
+     * Count a command that has been run and timed.
+     * @param verb The verb number of the command.
+     * @param nanos How long running it took.
+     */
+    public void commandTimed(int verb, long nanos)
+    {
+        counts[slot(verb)].increment();
+        commands[slot(verb)].record(nanos);
+    }
+
+    /**
+     * Add lines parsed by a parser to the shared counters.
+     * @param unreported The number of lines parsed.
+     */
+    public void linesParsed(int unreported)
+    {
+        lines.add(unreported);
+    }
+
+    /**
+     * Count a line that has been parsed into a command and timed.
+     * @param nanos How long parsing it took.
+     */
+    public void lineTimed(long nanos)
+    {
+        lines.increment();
+        parsing.record(nanos);
+    }
+
+    /**
+     * Count a player going into a room.
+     * @param room The room.
+     */
+    public void roomEntered(Room room)
+    {
+        String key = visitsKey(room);
+        LongAdder count = visits.get(key);
+        if(count == null) {
+            count = visits.computeIfAbsent(key, k -> new LongAdder());
+        }
+        count.increment();
+    }
+
+    /**
+     * Count a player picking up an item.
+     */
+    public void itemPickedUp()
+    {
+        pickUps.increment();
+    }
+
+    /**
+     * Count a player dropping an item.
+     */
+    public void itemDropped()
+    {
+        drops.increment();
+    }
+
+    /**
+     * Count an item being taken out of a room.
+     */
+    public void itemTaken()
+    {
+        itemsTaken.increment();
+    }
+
+    /**
+     * Count an item being put into a room.
+     */
+    public void itemAdded()
+    {
+        itemsAdded.increment();
+    }
+
+    /**
+     * @return The number of visits to a room so far; for a room without a
+     *         name, to all rooms without one, and for a room of a generated
+     *         world, to all generated rooms.
+     */
+    public long getVisits(Room room)
+    {
+        LongAdder count = visits.get(visitsKey(room));
+        return count == null ? 0 : count.sum();
+    }
+
+    /**
+     * Return the name under which visits to a room are counted.
+     */
+    private static String visitsKey(Room room)
+    {
+        if(GeneratedWorld.worldOf(room) != null) {
+            return GENERATED_ROOMS;
+        }
+        return room.getName() != null ? room.getName() : UNNAMED_ROOMS;
+    }
+
+    /**
+     * @return A report of all metrics, for people to read.
+     */
+    public String report()
+    {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("%-8s %10s %10s %10s %10s %10s %10s%n",
+                                     "command", "count", "mean us", "p50 us", "p99 us", "p99.9 us", "max us"));
+        for(int verb = 0; verb < commands.length; verb++) {
+            String name = verb == OTHER_VERBS ? "(plugin)" : CommandWord.values()[verb].toString();
+            appendHistogram(builder, name, counts[verb].sum(), commands[verb]);
+        }
+        appendHistogram(builder, "(parse)", lines.sum(), parsing);
+        List<Map.Entry<String, LongAdder>> rooms = new ArrayList<>(visits.entrySet());
+        long moves = 0;
+        for(Map.Entry<String, LongAdder> room : rooms) {
+            moves += room.getValue().sum();
+        }
+        builder.append(String.format("moves %d, picked up %d, dropped %d; items taken from rooms %d, put in rooms %d%n",
+                                     moves, pickUps.sum(), drops.sum(), itemsTaken.sum(), itemsAdded.sum()));
+
+        rooms.sort((a, b) -> Long.compare(b.getValue().sum(), a.getValue().sum()));
+        builder.append("most visited rooms:");
+        for(int i = 0; i < rooms.size() && i < REPORTED_ROOMS; i++) {
+            builder.append(String.format("%n  %-30s %10d", rooms.get(i).getKey(), rooms.get(i).getValue().sum()));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Write the report to a file. The file is replaced in one step, so a
+     * reader never sees half a report.
+     * @param file The file.
+     * @throws IOException If the file can't be written.
+     */
+    public void dump(Path file) throws IOException
+    {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temporary, (report() + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Write the report to a file regularly, on a background thread.
+     * @param file The file.
+     * @param periodSeconds The seconds between writes.
+     */
+    public synchronized void startDumping(Path file, long periodSeconds)
+    {
+        if(dumper == null) {
+            dumper = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "metrics-dump");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        dumper.scheduleAtFixedRate(() -> {
+            try {
+                dump(file);
+            }
+            catch(IOException e) {
+                System.err.println("Could not write metrics: " + e.getMessage());
+            }
+        }, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    private static void appendHistogram(StringBuilder builder, String name, long count,
+                                        LatencyHistogram histogram)
+    {
+        if(count == 0) {
+            return;
+        }
+        if(histogram.getCount() == 0) {
+            // none of them has been timed yet.
+            builder.append(String.format("%-8s %10d %10s %10s %10s %10s %10s%n", name, count,
+                                         "-", "-", "-", "-", "-"));
+            return;
+        }
+        builder.append(String.format("%-8s %10d %10.2f %10.2f %10.2f %10.2f %10.2f%n", name, count,
+                                     histogram.getMean() / 1e3,
+                                     histogram.getValueAtPercentile(50) / 1e3,
+                                     histogram.getValueAtPercentile(99) / 1e3,
+                                     histogram.getValueAtPercentile(99.9) / 1e3,
+                                     histogram.getMax() / 1e3));
+    }
+}
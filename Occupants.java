@@ -0,0 +1,122 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The players in a room who want to know what happens there, and the
+ * events that have happened there but haven't been passed on to them yet.
+ *
+ * Publishing an event only adds it to the room's list; it costs the same
+ * however many players are in the room. The EventBus later passes all
+ * the events collected in the room on to every occupant in one go. If
+ * more than MAX_PENDING events pile up before it does, the rest are only
+ * counted, and occupants are told how many they missed.
+ *
+ * @author Michael Biondi
+ * @version 2026.10.18
+ */
+public class Occupants
+{
+    // Events collected in a room before the rest are only counted.
+    private static final int MAX_PENDING = 256;
+
+    private Set<Subscriber> subscribers;
+    private List<Event> pending;    // events not yet passed on
+    private int missed;             // events that didn't fit in pending
+
+    /**
+     * Create the occupants of an empty room.
+     */
+    public Occupants()
+    {
+        subscribers = ConcurrentHashMap.newKeySet();
+        pending = new ArrayList<>();
+    }
+
+    /**
+     * A player comes into the room.
+     * @param subscriber Where the player's events go.
+     */
+    public void enter(Subscriber subscriber)
+    {
+        subscribers.add(subscriber);
+    }
+
+    /**
+     * A player leaves the room.
+     * @param subscriber Where the player's events go.
+     */
+    public void leave(Subscriber subscriber)
+    {
+        subscribers.remove(subscriber);
+    }
+
+    /**
+     * @return The number of players in the room.
+     */
+    public int size()
+    {
+        return subscribers.size();
+    }
+
+    /**
+     * Add an event to be passed on.
+     * @param source Where the events of the player who caused it go,
+     *               so they aren't told about it, or null.
+     * @param text What happened.
+     * @return true if this is the first event waiting, so the room needs
+     *         to be handed to the EventBus.
+     */
+    public synchronized boolean post(Subscriber source, String text)
+    {
+        if(pending.size() < MAX_PENDING) {
+            pending.add(new Event(source, text));
+        }
+        else {
+            missed++;
+        }
+        return pending.size() + missed == 1;
+    }
+
+    /**
+     * Pass the events waiting on to everyone in the room.
+     */
+    public void deliver()
+    {
+        List<Event> events;
+        int notDelivered;
+        synchronized(this) {
+            events = pending;
+            notDelivered = missed;
+            pending = new ArrayList<>();
+            missed = 0;
+        }
+        for(Subscriber subscriber : subscribers) {
+            for(Event event : events) {
+                if(event.source != subscriber) {
+                    subscriber.receive(event.text);
+                }
+            }
+            if(notDelivered > 0) {
+                subscriber.missed(notDelivered);
+            }
+            subscriber.wake();
+        }
+    }
+
+    /**
+     * Something that happened, and whose player caused it.
+     */
+    private static class Event
+    {
+        private final Subscriber source;
+        private final String text;
+
+        private Event(Subscriber source, String text)
+        {
+            this.source = source;
+            this.text = text;
+        }
+    }
+}
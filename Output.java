@@ -0,0 +1,35 @@
+/**
+ * Somewhere the game's text is written to, such as the terminal window,
+ * a client's socket or a file.
+ *
+ * Output may be held back until flush() is called, so that many lines
+ * can be written at once; whoever waits for the user to type something
+ * must flush first.
+ *
+ * @author Michael Biondi
+ * @version 2026.10.18
+ */
+public interface Output
+{
+    /**
+     * Write some text.
+     * @param text The text to write.
+     */
+    void print(String text);
+
+    /**
+     * Write some text and end the line.
+     * @param text The text to write.
+     */
+    void println(String text);
+
+    /**
+     * End the line.
+     */
+    void println();
+
+    /**
+     * Make sure everything written so far reaches its destination.
+     */
+    void flush();
+}
@@ -1,4 +1,9 @@
-import java.util.Scanner;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * This class is part of the "World of Zuul" application. 
@@ -12,6 +17,10 @@ import java.util.Scanner;
  * The parser has a set of known command words. It checks user input against
  * the known commands, and if the input is not one of the known commands, it
  * returns a command object that is marked as an unknown command.
+ *
+ * Lines are split into words by hand rather than with a Scanner, and the
+ * command word is looked up without being copied out of the line, so that
+ * parsing a line allocates little more than the Command and its second word.
  * 
  * @author  Michael Kölling and David J. Barnes
  * @version 2024.11.10
@@ -19,41 +28,201 @@ import java.util.Scanner;
 public class Parser 
 {
     private CommandWords commands;  // holds all valid command words
-    private Scanner reader;         // source of command input
+    private CommandRegistry registry;   // holds the verbs of plugins, or null
+    private BufferedReader reader;  // source of command input
+    private Output out;             // where prompts are written
+    private int linesParsed;        // counted only to decide which to time for metrics
+    private int unreportedLines;    // lines not yet added to the metrics
 
     /**
      * Create a parser to read from the terminal window.
      */
     public Parser() 
     {
+        this(System.in, new BufferedOutput(System.out));
+    }
+
+    /**
+     * Create a parser to read from any input stream, such as a
+     * client's socket.
+     * @param in The stream commands are read from.
+     * @param out The output prompts are written to. It is flushed
+     *            before waiting for input.
+     */
+    public Parser(InputStream in, Output out)
+    {
+        this(in, out, null);
+    }
+
+    /**
+     * Create a parser that also knows the verbs added by plugins to a
+     * registry of commands.
+     * @param in The stream commands are read from.
+     * @param out The output prompts are written to. It is flushed
+     *            before waiting for input.
+     * @param registry The registry whose plugin verbs are recognised,
+     *                 or null for none.
+     */
+    public Parser(InputStream in, Output out, CommandRegistry registry)
+    {
+        this.registry = registry;
+        commands = new CommandWords();
+        reader = new BufferedReader(new InputStreamReader(in));
+        this.out = out;
+    }
+
+    /**
+     * Create a parser with no input of its own, for lines that are read
+     * elsewhere and handed to parseCommand(). It takes no memory for
+     * reading, which matters when there are thousands of them.
+     * @param out The output prompts are written to.
+     * @param registry The registry whose plugin verbs are recognised,
+     *                 or null for none.
+     */
+    public Parser(Output out, CommandRegistry registry)
+    {
+        this.registry = registry;
         commands = new CommandWords();
-        reader = new Scanner(System.in);
+        this.out = out;
     }
 
     /**
-     * @return The next command from the user.
+     * @return The next command from the user. If the input has ended,
+     *         or the parser has no input, a quit command is returned.
      */
     public Command getCommand() 
     {
         String inputLine;   // will hold the full input line
-        String word1 = null;
-        String word2 = null;
 
-        System.out.print("> ");     // print prompt
+        prompt();
+
+        try {
+            inputLine = reader == null ? null : reader.readLine();
+        }
+        catch(IOException e) {
+            inputLine = null;
+        }
+        if(inputLine == null) {
+            // the user has gone away, so there is nothing left to play.
+            return new Command(CommandWord.QUIT, null);
+        }
+        if(!Metrics.ENABLED) {
+            return parseCommand(inputLine);
+        }
+        if(!Metrics.isSampled(linesParsed++)) {
+            unreportedLines++;
+            return parseCommand(inputLine);
+        }
+        long started = System.nanoTime();
+        Command command = parseCommand(inputLine);
+        Metrics.get().lineTimed(System.nanoTime() - started);
+        reportMetrics();
+        return command;
+    }
 
-        inputLine = reader.nextLine();
+    /**
+     * Ask the user for a command, and send everything written so far.
+     */
+    public void prompt()
+    {
+        out.print("> ");
+        out.flush();
+    }
 
+    /**
+     * Interpret a line of input as a command. Words are separated by
+     * whitespace; only the first two words are used.
+     * @param inputLine The line to interpret.
+     * @return The command on the line.
+     */
+    public Command parseCommand(String inputLine)
+    {
         // Find up to two words on the line.
-        Scanner tokenizer = new Scanner(inputLine);
-        if(tokenizer.hasNext()) {
-            word1 = tokenizer.next();      // get first word
-            if(tokenizer.hasNext()) {
-                word2 = tokenizer.next();      // get second word
-                // note: we just ignore the rest of the input line.
+        int length = inputLine.length();
+        int start1 = skipWhitespace(inputLine, 0);
+        if(start1 == length) {
+            return new Command(commands.getCommandWord(null), null);
+        }
+        int end1 = skipWord(inputLine, start1);
+        CommandWord word1 = commands.getCommandWord(inputLine, start1, end1);
+        int pluginVerb = -1;
+        if(registry != null && (word1 == CommandWord.UNKNOWN || !commands.isCommand(inputLine, start1, end1))) {
+            // a word that only abbreviates a command word may be a plugin
+            // verb in full, or abbreviate one as well and so be ambiguous.
+            pluginVerb = registry.getPluginVerb(inputLine, start1, end1);
+            if(pluginVerb >= 0 && word1 != CommandWord.UNKNOWN) {
+                if(!registry.isPluginVerb(inputLine, start1, end1)) {
+                    pluginVerb = -1;
+                }
+                word1 = CommandWord.UNKNOWN;
+            }
+        }
+
+        String word2 = null;
+        int start2 = skipWhitespace(inputLine, end1);
+        if(start2 < length) {
+            word2 = inputLine.substring(start2, skipWord(inputLine, start2));
+            // note: we just ignore the rest of the input line.
+        }
+        if(pluginVerb >= 0) {
+            return new Command(pluginVerb, word2);
+        }
+        if(word1 == CommandWord.UNKNOWN) {
+            return new Command(inputLine.substring(start1, end1), word2);
+        }
+        return new Command(word1, word2);
+    }
+
+    /**
+     * List the verbs, including those of plugins, that start with a prefix.
+     * @param prefix The start of a verb.
+     * @return The verbs starting with it.
+     */
+    public List<String> getCompletions(String prefix)
+    {
+        List<String> completions = new ArrayList<>(commands.getCompletions(prefix));
+        if(registry != null) {
+            for(String verb : registry.getPluginVerbs()) {
+                if(verb.startsWith(prefix)) {
+                    completions.add(verb);
+                }
             }
         }
+        return completions;
+    }
+
+    /**
+     * @return The position of the first non-whitespace character at or
+     *         after "from", or the length of the line if there is none.
+     */
+    private static int skipWhitespace(String line, int from)
+    {
+        while(from < line.length() && Character.isWhitespace(line.charAt(from))) {
+            from++;
+        }
+        return from;
+    }
+
+    /**
+     * @return The position just after the word starting at "from".
+     */
+    private static int skipWord(String line, int from)
+    {
+        while(from < line.length() && !Character.isWhitespace(line.charAt(from))) {
+            from++;
+        }
+        return from;
+    }
 
-        return new Command(commands.getCommandWord(word1), word2);
+    /**
+     * Add the lines this parser has counted to the metrics, if they are on.
+     */
+    public void reportMetrics()
+    {
+        if(Metrics.ENABLED && unreportedLines > 0) {
+            Metrics.get().linesParsed(unreportedLines);
+            unreportedLines = 0;
+        }
     }
 
     /**
@@ -61,6 +230,11 @@ public class Parser
      */
     public void showCommands()
     {
-        commands.showAll();
+        if(registry != null) {
+            for(String verb : registry.getPluginVerbs()) {
+                out.print(verb + "  ");
+            }
+        }
+        commands.showAll(out);
     }
 }
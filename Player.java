@@ -1,5 +1,7 @@
-import java.util.Stack;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.LinkedHashMap;
 
 /**
  * The player of the game, including what room
@@ -12,8 +14,14 @@ import java.util.ArrayList;
 public class Player
 {
     private Room currentRoom;
-    private Stack<Room> roomsSequence;
-    private ArrayList<Item> inventory;
+    private RoomHistory roomsSequence;
+    private LinkedHashMap<String, ArrayDeque<Item>> inventory;  // items carried, by name
+    private String inventoryString;     // the last description of the inventory, or null
+    private PrefixTrie<String> inventoryNames;  // the names of the items carried, or null
+    private long carriedTenths;         // the weight of the inventory in tenths of a pound
+    private long capacityTenths;        // the most the player can carry, or 0 for no limit
+    private String name;                // what other players see this player as
+    private Subscriber subscriber;      // where events in the player's room go, or null
 
     /**
      * Constructor to init the player in a specified room
@@ -21,11 +29,80 @@ public class Player
      * @param startingRoom The room to start the player in.
      */
     public Player(Room startingRoom)
+    {
+        this(startingRoom, new RoomHistory(startingRoom));
+    }
+    
+    /**
+     * Constructor to init the player in a specified room, with a
+     * history that may be bounded or compress loops.
+     * 
+     * @param startingRoom The room to start the player in.
+     * @param historyCapacity The most rooms to remember for going back,
+     *                        or 0 to remember them all.
+     * @param compressLoops Whether going back and forth between two rooms
+     *                      should be forgotten.
+     */
+    public Player(Room startingRoom, int historyCapacity, boolean compressLoops)
+    {
+        this(startingRoom, new RoomHistory(startingRoom, historyCapacity, compressLoops));
+    }
+    
+    /**
+     * Constructor to init the player in a specified room with a given history.
+     * 
+     * @param startingRoom The room to start the player in.
+     * @param history The history of rooms, which starts in startingRoom.
+     */
+    private Player(Room startingRoom, RoomHistory history)
     {
         currentRoom = startingRoom;
-        roomsSequence = new Stack<Room>();
-        roomsSequence.push(startingRoom);
-        inventory = new ArrayList<Item>();
+        roomsSequence = history;
+        inventory = new LinkedHashMap<>();
+        name = "Someone";
+    }
+    
+    /**
+     * @return The name other players see this player as.
+     */
+    public String getName()
+    {
+        return name;
+    }
+    
+    /**
+     * @param name The name other players see this player as.
+     */
+    public void setName(String name)
+    {
+        this.name = name;
+    }
+    
+    /**
+     * @return Where the events in the player's room go, or null if the
+     *         player isn't told about them.
+     */
+    public Subscriber getSubscriber()
+    {
+        return subscriber;
+    }
+    
+    /**
+     * Start or stop telling the player what happens in the rooms they are
+     * in. The player is counted among the occupants of their room for as
+     * long as they have a subscriber.
+     * 
+     * @param subscriber Where the events go, or null to stop.
+     */
+    public void setSubscriber(Subscriber subscriber)
+    {
+        if(this.subscriber != null) {
+            currentRoom.getOccupants().leave(this.subscriber);
+        }
+        this.subscriber = subscriber;
+        if(subscriber != null) {
+            currentRoom.getOccupants().enter(subscriber);
+        }
     }
     
     /**
@@ -43,70 +120,231 @@ public class Player
      */
     public void updateCurrentRoom(Room nextRoom)
     {
-        currentRoom = nextRoom;
-        roomsSequence.push(currentRoom);
+        moveTo(nextRoom);
+        roomsSequence.visit(currentRoom);
+        if(Metrics.ENABLED) {
+            Metrics.get().roomEntered(currentRoom);
+        }
+    }
+    
+    /**
+     * Returns the rooms the player can go back through, oldest first,
+     * ending with the current room.
+     */
+    public List<Room> getRoomsSequence()
+    {
+        return roomsSequence.getRooms();
+    }
+    
+    /**
+     * Put the player back into a saved situation, such as one read
+     * from a snapshot of the game.
+     * 
+     * @param rooms The rooms the player can go back through, oldest
+     *              first, ending with the room the player is in.
+     * @param items The items the player carries, in the order they
+     *              were picked up.
+     */
+    public void restore(List<Room> rooms, List<Item> items)
+    {
+        roomsSequence.reset(rooms.get(0));
+        for(int i = 1; i < rooms.size(); i++) {
+            roomsSequence.visit(rooms.get(i));
+        }
+        moveTo(rooms.get(rooms.size() - 1));
+        inventory.clear();
+        carriedTenths = 0;
+        for(Item item : items) {
+            inventory.computeIfAbsent(item.getName(), name -> new ArrayDeque<>()).addLast(item);
+            carriedTenths += item.getWeightTenths();
+        }
+        inventoryString = null;
+        inventoryNames = null;
+    }
+    
+    /**
+     * Returns the total weight of the items the player carries.
+     * 
+     * @return The weight in pounds.
+     */
+    public double getCarriedWeight()
+    {
+        return carriedTenths / 10.0;
+    }
+    
+    /**
+     * Returns the most weight the player can carry.
+     * 
+     * @return The capacity in pounds, or 0 if there is no limit.
+     */
+    public double getCarryCapacity()
+    {
+        return capacityTenths / 10.0;
+    }
+    
+    /**
+     * Sets the most weight the player can carry. Items already carried
+     * are kept even if they weigh more, but no more can be picked up.
+     * 
+     * @param pounds The capacity in pounds, or 0 for no limit.
+     */
+    public void setCarryCapacity(double pounds)
+    {
+        if(pounds < 0) {
+            throw new IllegalArgumentException("capacity must not be negative");
+        }
+        capacityTenths = Math.round(pounds * 10);
+        inventoryString = null;
+    }
+    
+    /**
+     * Returns whether the player could pick up an item on top of
+     * what they carry already.
+     * 
+     * @param item The item.
+     * @return Whether the item is light enough.
+     */
+    public boolean canCarry(Item item)
+    {
+        return capacityTenths == 0 || carriedTenths + item.getWeightTenths() <= capacityTenths;
     }
     
     /**
      * Returns a string describing the items in the player's inventory, for example:
      * "Items in Inventory:
      * the Blade of Zeltron (zeltron), 2000.0 lbs
-     * cardboard box (box), 0.1 lbs"
+     * cardboard box (box), 0.1 lbs
+     * Carrying 2000.1 lbs of 2500.0 lbs"
      * 
      * @return Info about the items in the player's inventory
      */
     public String items()
     {
-        String returnString = "Items in Inventory:";
-        for(Item item : inventory) {
-            String weightString = String.format("%.1f", item.getWeight());
-            returnString +=
-            "\n" + item.getDescription() + " (" + item.getName() + "), "
-            + weightString + " lbs";
+        if(inventoryString == null) {
+            StringBuilder builder = new StringBuilder("Items in Inventory:");
+            for(ArrayDeque<Item> sameName : inventory.values()) {
+                for(Item item : sameName) {
+                    builder.append('\n');
+                    item.appendInfo(builder);
+                }
+            }
+            builder.append("\nCarrying ");
+            Item.appendWeight(builder, carriedTenths);
+            if(capacityTenths > 0) {
+                builder.append(" of ");
+                Item.appendWeight(builder, capacityTenths);
+            }
+            inventoryString = builder.toString();
+        }
+        return inventoryString;
+    }
+    
+    /**
+     * Return the names of the items in the player's inventory in a trie,
+     * so that an abbreviated name can be completed.
+     * 
+     * @return The item names, each mapped to itself.
+     */
+    public PrefixTrie<String> getItemNames()
+    {
+        if(inventoryNames == null) {
+            PrefixTrie<String> names = new PrefixTrie<>();
+            for(String name : inventory.keySet()) {
+                names.put(name, name);
+            }
+            inventoryNames = names;
+        }
+        return inventoryNames;
+    }
+    
+    /**
+     * Return a list of the items in the player's inventory.
+     */
+    public List<Item> getItems()
+    {
+        List<Item> list = new ArrayList<>();
+        for(ArrayDeque<Item> sameName : inventory.values()) {
+            list.addAll(sameName);
         }
-        return returnString;
+        return list;
+    }
+    
+    /**
+     * Return the named item from the player's inventory without dropping it.
+     * If the player carries several items with that name, the one picked
+     * up first is returned.
+     * 
+     * @param itemName The short name of the item.
+     * @return The item, or null if the player isn't carrying it.
+     */
+    public Item getItem(String itemName)
+    {
+        ArrayDeque<Item> sameName = inventory.get(itemName);
+        return sameName == null ? null : sameName.peekFirst();
     }
     
     /**
      * Removes the named item from the player's
-     * current room and adds it to their inventory.
+     * current room and adds it to their inventory, unless it would
+     * take the player over their carry capacity.
      * 
      * @param itemName The short name of the item to be picked up.
+     * @return The item picked up, or null if there was no such item
+     *         or it is too heavy.
      */
-    public void pickUpItem(String itemName)
+    public Item pickUpItem(String itemName)
     {
-        for(Item item : currentRoom.getItems())
+        // looked at first, so that a room isn't copied or kept for nothing.
+        Item next = currentRoom.getItem(itemName);
+        if(next == null || !canCarry(next.withCount(1)))
         {
-            if(itemName.equals(item.getName()))
-            {
-                inventory.add(item);
-                currentRoom.removeItem(item);
-                System.out.println("You picked up " + item.getDescription() + "!");
-                return;
+            return null;
+        }
+        // someone else may take it meanwhile, and the next one be heavier.
+        long spareTenths = capacityTenths == 0 ? Long.MAX_VALUE : capacityTenths - carriedTenths;
+        Item item = currentRoom.takeItem(itemName, spareTenths);
+        if(item != null)
+        {
+            inventory.computeIfAbsent(itemName, name -> new ArrayDeque<>()).addLast(item);
+            carriedTenths += item.getWeightTenths();
+            inventoryString = null;
+            inventoryNames = null;
+            if(Metrics.ENABLED) {
+                Metrics.get().itemPickedUp();
             }
         }
-        System.out.println("You struggle to pick anything up.");
+        return item;
     }
     
     /**
      * Removes the named item from the player's
-     * inventory and adds it to their current room.
+     * inventory and adds it to their current room. If the player
+     * carries several items with that name, the one picked up first
+     * is dropped.
      * 
-     * @param itemName The short name of the item to be picked up.
+     * @param itemName The short name of the item to be dropped.
+     * @return The item dropped, or null if the player isn't carrying it.
      */
-    public void dropItem(String itemName)
+    public Item dropItem(String itemName)
     {
-        for(Item item : inventory)
+        ArrayDeque<Item> sameName = inventory.get(itemName);
+        if(sameName == null)
         {
-            if(itemName.equals(item.getName()))
-            {
-                currentRoom.addItem(item);
-                inventory.remove(item);
-                System.out.println("You dropped " + item.getDescription() + ".");
-                return;
-            }
+            return null;
+        }
+        Item item = sameName.pollFirst();
+        if(sameName.isEmpty())
+        {
+            inventory.remove(itemName);
+        }
+        carriedTenths -= item.getWeightTenths();
+        inventoryString = null;
+        inventoryNames = null;
+        currentRoom.addItem(item);
+        if(Metrics.ENABLED) {
+            Metrics.get().itemDropped();
         }
-        System.out.println("You can't let go.");
+        return item;
     }
     
     /**
@@ -117,14 +355,29 @@ public class Player
      */
     public boolean back()
     {
-        if (roomsSequence.size() > 1) {
-            roomsSequence.pop();
-            currentRoom = roomsSequence.peek();
+        Room previousRoom = roomsSequence.back();
+        if (previousRoom != null) {
+            moveTo(previousRoom);
+            if(Metrics.ENABLED) {
+                Metrics.get().roomEntered(currentRoom);
+            }
             return true;
         }
         else {
-            System.out.println("You are already at the starting location and cannot go back further.");
             return false;
         }
     }
+    
+    /**
+     * Put the player in a room, moving them from the occupants of the
+     * room they were in to those of the new one.
+     */
+    private void moveTo(Room room)
+    {
+        if(subscriber != null && room != currentRoom) {
+            currentRoom.getOccupants().leave(subscriber);
+            room.getOccupants().enter(subscriber);
+        }
+        currentRoom = room;
+    }
 }
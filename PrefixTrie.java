@@ -0,0 +1,209 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A set of words, each with a value, that can be looked up by any
+ * unambiguous abbreviation: in a trie holding "take" and "talk", "tak"
+ * finds "take", while "ta" is ambiguous and finds nothing.
+ *
+ * Every node of the trie counts the words below it and remembers the
+ * last of them, so finding a word from a prefix only walks down the
+ * prefix's characters, however many words the trie holds. Listing the
+ * possible completions of a prefix costs as much as there are of them.
+ *
+ * A trie is filled once and then only read; it is not synchronized, but
+ * it may be read by many threads once it has been safely published.
+ *
+ * @author Michael Biondi
+ * @version 2026.10.18
+ */
+public class PrefixTrie<V>
+{
+    private Node<V> root;
+
+    /**
+     * Create an empty trie.
+     */
+    public PrefixTrie()
+    {
+        root = new Node<>();
+    }
+
+    /**
+     * Add a word to the trie. Adding a word again replaces its value.
+     * @param word The word.
+     * @param value The value found by looking the word up.
+     */
+    public void put(String word, V value)
+    {
+        Node<V> node = root;
+        List<Node<V>> path = new ArrayList<>(word.length() + 1);
+        path.add(node);
+        for(int i = 0; i < word.length(); i++) {
+            node = node.childOrNew(word.charAt(i));
+            path.add(node);
+        }
+        boolean added = node.word == null;
+        node.word = word;
+        node.value = value;
+        for(Node<V> onPath : path) {
+            if(added) {
+                onPath.words++;
+            }
+            onPath.last = node;
+        }
+    }
+
+    /**
+     * @return The number of words in the trie.
+     */
+    public int size()
+    {
+        return root.words;
+    }
+
+    /**
+     * Find the value of a word.
+     * @param word The word, or an abbreviation of it.
+     * @return The value of the word, or null if it isn't in the trie.
+     */
+    public V get(String word)
+    {
+        return get(word, 0, word.length());
+    }
+
+    /**
+     * Find the value of a word from part of a line of input, without
+     * copying it out of the line. The word itself is found if it is in
+     * the trie; otherwise, the one word that starts with it is.
+     * @param line The line of input.
+     * @param start The position of the word's first character.
+     * @param end The position just after the word's last character.
+     * @return The value of the word, or null if no word or more than one
+     *         word starts with it.
+     */
+    public V get(CharSequence line, int start, int end)
+    {
+        Node<V> node = find(line, start, end);
+        if(node == null) {
+            return null;
+        }
+        if(node.word != null) {
+            return node.value;
+        }
+        return node.words == 1 ? node.last.value : null;
+    }
+
+    /**
+     * Find the value of a word spelled out in full in part of a line of
+     * input, ignoring any words it is an abbreviation of.
+     * @param line The line of input.
+     * @param start The position of the word's first character.
+     * @param end The position just after the word's last character.
+     * @return The value of the word, or null if it isn't in the trie.
+     */
+    public V getExact(CharSequence line, int start, int end)
+    {
+        Node<V> node = find(line, start, end);
+        return node == null || node.word == null ? null : node.value;
+    }
+
+    /**
+     * Find the word a prefix is an abbreviation of.
+     * @param prefix The prefix.
+     * @return The word itself if it is in the trie, or else the one word
+     *         starting with it, or null if there is none or more than one.
+     */
+    public String complete(String prefix)
+    {
+        Node<V> node = find(prefix, 0, prefix.length());
+        if(node == null) {
+            return null;
+        }
+        if(node.word != null) {
+            return node.word;
+        }
+        return node.words == 1 ? node.last.word : null;
+    }
+
+    /**
+     * List all words starting with a prefix.
+     * @param prefix The prefix.
+     * @return The words in alphabetical order, or an empty list.
+     */
+    public List<String> completions(String prefix)
+    {
+        List<String> words = new ArrayList<>();
+        Node<V> node = find(prefix, 0, prefix.length());
+        if(node != null) {
+            node.collect(words);
+        }
+        return words;
+    }
+
+    /**
+     * @return The node reached by following part of a string, or null.
+     */
+    private Node<V> find(CharSequence text, int start, int end)
+    {
+        Node<V> node = root;
+        for(int i = start; i < end && node != null; i++) {
+            node = node.child(text.charAt(i));
+        }
+        return node;
+    }
+
+    /**
+     * One node of the trie, reached by one character from its parent.
+     * Its children are kept sorted by their characters.
+     */
+    private static class Node<V>
+    {
+        private static final char[] NO_KEYS = new char[0];
+
+        private char[] keys = NO_KEYS;
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private Node<V>[] children = new Node[0];
+        private String word;        // the word ending here, or null
+        private V value;
+        private int words;          // the number of words ending here or below
+        private Node<V> last;       // the node of the word added here or below last
+
+        private Node<V> child(char key)
+        {
+            int index = Arrays.binarySearch(keys, key);
+            return index >= 0 ? children[index] : null;
+        }
+
+        private Node<V> childOrNew(char key)
+        {
+            int index = Arrays.binarySearch(keys, key);
+            if(index >= 0) {
+                return children[index];
+            }
+            index = -index - 1;
+            Node<V> child = new Node<>();
+            char[] newKeys = new char[keys.length + 1];
+            Node<V>[] newChildren = Arrays.copyOf(children, children.length + 1);
+            System.arraycopy(keys, 0, newKeys, 0, index);
+            System.arraycopy(keys, index, newKeys, index + 1, keys.length - index);
+            System.arraycopy(children, index, newChildren, index + 1, children.length - index);
+            newKeys[index] = key;
+            newChildren[index] = child;
+            keys = newKeys;
+            children = newChildren;
+            return child;
+        }
+
+        private void collect(List<String> words)
+        {
+            if(word != null) {
+                words.add(word);
+            }
+            for(Node<V> child : children) {
+                child.collect(words);
+            }
+        }
+    }
+}
@@ -1,7 +1,11 @@
-import java.util.Set;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Class Room - a room in an adventure game.
@@ -13,15 +17,48 @@ import java.util.Iterator;
  * connected to other rooms via exits.  For each existing exit, the room 
  * stores a reference to the neighboring room.
  * 
+ * Rooms may be shared by several players at once, so the items in a
+ * room are kept in a concurrent map from item name to the items of that
+ * name, and taking an item is atomic: when two players grab the same
+ * item, exactly one of them gets it. Items with the same name are taken
+ * in the order they were put into the room. Items of the same type put
+ * into the room one after the other are kept as one stack, from which
+ * they are taken one at a time.
+ * 
+ * Exits may change while players are moving about, as when a train comes
+ * and goes, so the map of exits is never changed in place: setExit()
+ * replaces it with a changed copy. A room whose map has a RouteFinder
+ * tells it when its exits change, so that routes take the change into
+ * account (see RouteFinder.forMap()).
+ * 
+ * The players in a room who are told what happens there are kept in its
+ * Occupants, which are only made once a player comes in.
+ * 
+ * A room whose map has a SearchIndex tells it when its items change, so
+ * that searches find items where they are now.
+ * 
+ * The long description is built once and reused until the room's exits
+ * or items change, so looking around an unchanged room costs almost
+ * nothing. The same goes for the tries used to complete abbreviated exit
+ * and item names.
+ * 
  * @author  Michael Kölling and David J. Barnes, updated by Michael Biondi
  * @version 2024.11.12
  */
 
 public class Room 
 {
+    private String name;
     private String description;
-    private HashMap<String, Room> exits;        // stores exits of this room.
-    private HashSet<Item> items;                    // stores items in this room
+    private volatile HashMap<String, Room> exits;   // stores exits of this room; replaced, never changed
+    private ConcurrentHashMap<String, ConcurrentLinkedDeque<Item>> items;   // items in this room, by name
+    private AtomicInteger changes;              // counts changes to exits and items
+    private volatile int exitChanges;           // counts changes to exits only
+    private volatile Rendering longDescription; // the last long description built
+    private volatile Names names;               // the exit and item names last indexed
+    private volatile Occupants occupants;       // made when a player first comes in
+    private volatile SearchIndex searchIndex;   // the index of the room's map, if it has one
+    private volatile RouteFinder routeFinder;   // the route finder of the room's map, if it has one
 
     /**
      * Create a room described "description". Initially, it has
@@ -31,9 +68,22 @@ public class Room
      */
     public Room(String description) 
     {
+        this(null, description);
+    }
+
+    /**
+     * Create a room with a name, such as "kitchen", by which players
+     * can refer to it, and a description.
+     * @param name The room's name, or null if it has none.
+     * @param description The room's description.
+     */
+    public Room(String name, String description)
+    {
+        this.name = name;
         this.description = description;
         exits = new HashMap<>();
-        items = new HashSet<Item>();
+        items = new ConcurrentHashMap<>();
+        changes = new AtomicInteger();
     }
 
     /**
@@ -41,9 +91,37 @@ public class Room
      * @param direction The direction of the exit.
      * @param neighbor  The room to which the exit leads.
      */
-    public void setExit(String direction, Room neighbor) 
+    public synchronized void setExit(String direction, Room neighbor) 
     {
-        exits.put(direction, neighbor);
+        HashMap<String, Room> updated = new HashMap<>(exits);
+        updated.put(direction, neighbor);
+        exits = updated;
+        exitsChanged();
+    }
+
+    /**
+     * Take away an exit, such as the door of a train that has left.
+     * @param direction The direction of the exit.
+     */
+    public synchronized void removeExit(String direction)
+    {
+        HashMap<String, Room> updated = new HashMap<>(exits);
+        updated.remove(direction);
+        exits = updated;
+        exitsChanged();
+    }
+
+    /**
+     * Note that the room's exits have changed, while it is locked.
+     */
+    private void exitsChanged()
+    {
+        changes.incrementAndGet();
+        exitChanges++;
+        RouteFinder finder = routeFinder;
+        if(finder != null) {
+            finder.exitsChanged(this);
+        }
     }
     
     /**
@@ -54,9 +132,17 @@ public class Room
      */
     public void addItem(String name, String description, double weight)
     {
-        items.add(new Item(name, description, weight));
+        addItem(new Item(name, description, weight));
     }
     
+    /**
+     * @return The name of the room, or null if it has none.
+     */
+    public String getName()
+    {
+        return name;
+    }
+
     /**
      * @return The short description of the room
      * (the one that was defined in the constructor).
@@ -74,70 +160,298 @@ public class Room
      */
     public String getLongDescription()
     {
-        return "You are " + description + ".\n" + getExitString() + "\n" + getItemString();
+        // Read the change count before building, so that a change made
+        // while building makes the result out of date straight away.
+        int version = changes.get();
+        Rendering rendering = longDescription;
+        if(rendering == null || rendering.version != version) {
+            StringBuilder builder = new StringBuilder();
+            builder.append("You are ").append(description).append(".\n");
+            appendExits(builder);
+            builder.append('\n');
+            appendItems(builder);
+            rendering = new Rendering(version, builder.toString());
+            longDescription = rendering;
+        }
+        return rendering.text;
     }
 
     /**
-     * Return a string describing the room's exits, for example
+     * Append a string describing the room's exits, for example
      * "Exits: north west".
-     * @return Details of the room's exits.
+     * @param builder The builder to append the details of the room's exits to.
+     */
+    private void appendExits(StringBuilder builder)
+    {
+        builder.append("Exits:");
+        for(String exit : getExitDirections()) {
+            builder.append(' ').append(exit);
+        }
+    }
+    
+    /**
+     * Return the directions in which this room has exits.
+     * @return A read-only view of the directions of the room's exits.
+     */
+    public Collection<String> getExitDirections()
+    {
+        return Collections.unmodifiableSet(exits.keySet());
+    }
+    
+    /**
+     * Return the directions of the room's exits in a trie, so that an
+     * abbreviated direction such as "ah" can be completed to "ahead".
+     * @return The exit directions, each mapped to itself.
+     */
+    public PrefixTrie<String> getExitNames()
+    {
+        return getNames().exits;
+    }
+
+    /**
+     * Return the names of the items in the room in a trie, so that an
+     * abbreviated name such as "sw" can be completed to "sword".
+     * @return The item names, each mapped to itself.
      */
-    private String getExitString()
+    public PrefixTrie<String> getItemNames()
     {
-        String returnString = "Exits:";
-        Set<String> keys = exits.keySet();
-        for(String exit : keys) {
-            returnString += " " + exit;
+        return getNames().items;
+    }
+
+    /**
+     * @return The tries of exit and item names, built again if the room
+     *         has changed since they were last built.
+     */
+    private Names getNames()
+    {
+        int version = changes.get();
+        Names current = names;
+        if(current == null || current.version != version) {
+            PrefixTrie<String> exitNames = new PrefixTrie<>();
+            for(String exit : getExitDirections()) {
+                exitNames.put(exit, exit);
+            }
+            PrefixTrie<String> itemNames = new PrefixTrie<>();
+            for(Item item : getItems()) {
+                itemNames.put(item.getName(), item.getName());
+            }
+            current = new Names(version, exitNames, itemNames);
+            names = current;
         }
-        return returnString;
+        return current;
+    }
+    
+    /**
+     * Return a list of the items currently in the room
+     */
+    public List<Item> getItems()
+    {
+        List<Item> list = new ArrayList<>();
+        for(ConcurrentLinkedDeque<Item> sameName : items.values()) {
+            list.addAll(sameName);
+        }
+        return list;
+    }
+    
+    /**
+     * Return the named item without taking it out of the room.
+     * 
+     * @param itemName The short name of the item
+     * @return The first item with that name, or null if there is none
+     */
+    public Item getItem(String itemName)
+    {
+        ConcurrentLinkedDeque<Item> sameName = items.get(itemName);
+        return sameName == null ? null : sameName.peekFirst();
     }
     
     /**
-     * Return the HashSet of items in the room
+     * Take the named item out of the room; from a stack, one item is
+     * taken. If several players try to take the same item at once, only
+     * one of them succeeds.
+     * 
+     * @param itemName The short name of the item to take
+     * @return The item taken, or null if there is no such item in the room
+     */
+    public Item takeItem(String itemName)
+    {
+        return takeItem(itemName, Long.MAX_VALUE);
+    }
+    
+    /**
+     * Take the named item out of the room, unless it is too heavy. The
+     * weight is checked and the item taken in one step, so an item that
+     * another player takes meanwhile is never swapped for a heavier one.
+     * 
+     * @param itemName The short name of the item to take
+     * @param maxWeightTenths The most the item may weigh, in tenths of a pound
+     * @return The item taken, or null if there is no such item in the room
+     *         or it is too heavy, in which case the room is left as it was
      */
-    public HashSet<Item> getItems()
+    public Item takeItem(String itemName, long maxWeightTenths)
     {
-        return items;
+        Item[] taken = new Item[1];
+        items.computeIfPresent(itemName, (name, sameName) -> {
+            Item first = sameName.peekFirst();
+            if(first == null || first.getType().getWeightTenths() > maxWeightTenths) {
+                return sameName.isEmpty() ? null : sameName;
+            }
+            sameName.pollFirst();
+            if(first.getCount() > 1) {
+                sameName.addFirst(first.withCount(first.getCount() - 1));
+                first = first.withCount(1);
+            }
+            taken[0] = first;
+            return sameName.isEmpty() ? null : sameName;
+        });
+        if(taken[0] != null) {
+            itemsChanged(taken[0], false);
+            if(Metrics.ENABLED) {
+                Metrics.get().itemTaken();
+            }
+        }
+        return taken[0];
     }
     
     /**
-     * Add an item to the room
+     * Add an item to the room. If the item last put into the room with
+     * the same name has the same type, the two are stacked.
      * 
      * @param itemToAdd The Item to be added to the room
      */
     public void addItem(Item itemToAdd)
     {
-        items.add(itemToAdd);
+        items.compute(itemToAdd.getName(), (name, sameName) -> {
+            if(sameName == null) {
+                sameName = new ConcurrentLinkedDeque<>();
+            }
+            Item last = sameName.peekLast();
+            if(last != null && last.getType() == itemToAdd.getType()) {
+                sameName.pollLast();
+                sameName.addLast(last.withCount(last.getCount() + itemToAdd.getCount()));
+            }
+            else {
+                sameName.addLast(itemToAdd);
+            }
+            return sameName;
+        });
+        itemsChanged(itemToAdd, true);
+        if(Metrics.ENABLED) {
+            Metrics.get().itemAdded();
+        }
     }
     
     /**
      * Remove the specified item from the room
      * 
-     * @param itemToRemove The Item to be removed from the room
+     * @param itemToRemove The Item to be removed from the room: an item
+     *                     or stack equal to it is removed
      */
     public void removeItem(Item itemToRemove)
     {
-        items.remove(itemToRemove);
+        boolean[] removed = new boolean[1];
+        items.computeIfPresent(itemToRemove.getName(), (name, sameName) -> {
+            removed[0] = sameName.remove(itemToRemove);
+            return sameName.isEmpty() ? null : sameName;
+        });
+        if(removed[0]) {
+            itemsChanged(itemToRemove, false);
+        }
+    }
+
+    /**
+     * Note that an item has come into the room or left it.
+     * @param item The item, or the part of a stack, that came or went.
+     * @param added Whether it came, rather than went.
+     */
+    private void itemsChanged(Item item, boolean added)
+    {
+        changes.incrementAndGet();
+        SearchIndex index = searchIndex;
+        if(index != null) {
+            index.update(this, item, added);
+        }
     }
     
     /**
-     * Returns a string describing the items in the room, for example:
+     * Appends a string describing the items in the room, for example:
      * "Items in room:
      * the Blade of Zeltron (zeltron), 2000.0 lbs
      * cardboard box (box), 0.1 lbs"
      * 
-     * @return Info about the items in the room
+     * @param builder The builder to append the info about the items to
      */
-    private String getItemString()
+    private void appendItems(StringBuilder builder)
     {
-        String returnString = "Items in room:";
-        for(Item item : items) {
-            String weightString = String.format("%.1f", item.getWeight());
-            returnString +=
-            "\n" + item.getDescription() + " (" + item.getName() + "), "
-            + weightString + " lbs";
+        builder.append("Items in room:");
+        for(ConcurrentLinkedDeque<Item> sameName : items.values()) {
+            for(Item item : sameName) {
+                builder.append('\n');
+                item.appendInfo(builder);
+            }
         }
-        return returnString;
+    }
+    
+    /**
+     * Return the players in the room who are told what happens in it.
+     * @return The occupants of the room.
+     */
+    public Occupants getOccupants()
+    {
+        Occupants current = occupants;
+        if(current == null) {
+            synchronized(this) {
+                current = occupants;
+                if(current == null) {
+                    current = new Occupants();
+                    occupants = current;
+                }
+            }
+        }
+        return current;
+    }
+    
+    /**
+     * @return The number of changes to the room's exits so far.
+     */
+    public int getExitChanges()
+    {
+        return exitChanges;
+    }
+
+    /**
+     * @return The route finder last made for the room's map, or null.
+     */
+    public RouteFinder getRouteFinder()
+    {
+        return routeFinder;
+    }
+
+    /**
+     * Remember the route finder made for the room's map.
+     * @param finder The route finder.
+     */
+    public void setRouteFinder(RouteFinder finder)
+    {
+        routeFinder = finder;
+    }
+
+    /**
+     * @return The search index of the room's map, or null if it hasn't
+     *         been indexed.
+     */
+    public SearchIndex getSearchIndex()
+    {
+        return searchIndex;
+    }
+
+    /**
+     * Tell the room which index to keep up to date with its items.
+     * @param index The search index of the room's map.
+     */
+    public void setSearchIndex(SearchIndex index)
+    {
+        searchIndex = index;
     }
     
     /**
@@ -150,5 +464,38 @@ public class Room
     {
         return exits.get(direction);
     }
-}
+    
+    /**
+     * The exit and item names of the room, together with the change count
+     * of the room at the time they were indexed.
+     */
+    private static class Names
+    {
+        private final int version;
+        private final PrefixTrie<String> exits;
+        private final PrefixTrie<String> items;
+
+        private Names(int version, PrefixTrie<String> exits, PrefixTrie<String> items)
+        {
+            this.version = version;
+            this.exits = exits;
+            this.items = items;
+        }
+    }
 
+    /**
+     * A long description of the room, together with the change count
+     * of the room at the time it was built.
+     */
+    private static class Rendering
+    {
+        private final int version;
+        private final String text;
+
+        private Rendering(int version, String text)
+        {
+            this.version = version;
+            this.text = text;
+        }
+    }
+}
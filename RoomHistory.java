@@ -0,0 +1,170 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The rooms a player has been in, most recent last, so that the player
+ * can go back the way they came.
+ *
+ * The rooms are kept in a ring buffer. A history may be given a capacity,
+ * in which case only that many rooms are remembered and the oldest are
+ * forgotten; without one it grows as needed. It may also compress loops:
+ * going from A to B and straight back to A then leaves the history as it
+ * was before going to B, instead of remembering A, B, A.
+ *
+ * A history belongs to one player and is not synchronized.
+ *
+ * @author Michael Biondi
+ * @version 2026.10.18
+ */
+public class RoomHistory
+{
+    // The number of rooms an unbounded history starts with space for.
+    private static final int INITIAL_SPACE = 16;
+
+    private Room[] rooms;
+    private int first;      // where the oldest remembered room is
+    private int size;       // how many rooms are remembered
+    private int capacity;   // the most rooms remembered, or 0 for no limit
+    private boolean compressLoops;
+
+    /**
+     * Create a history that remembers every room and doesn't compress loops.
+     * @param start The room the player starts in.
+     */
+    public RoomHistory(Room start)
+    {
+        this(start, 0, false);
+    }
+
+    /**
+     * Create a history.
+     * @param start The room the player starts in.
+     * @param capacity The most rooms to remember (at least 1),
+     *                 or 0 to remember them all.
+     * @param compressLoops Whether going back and forth between two rooms
+     *                      should be forgotten.
+     */
+    public RoomHistory(Room start, int capacity, boolean compressLoops)
+    {
+        if(capacity < 0) {
+            throw new IllegalArgumentException("capacity must not be negative");
+        }
+        this.capacity = capacity;
+        this.compressLoops = compressLoops;
+        rooms = new Room[capacity > 0 ? capacity : INITIAL_SPACE];
+        rooms[0] = start;
+        size = 1;
+    }
+
+    /**
+     * @return The room the player is in now.
+     */
+    public Room getCurrentRoom()
+    {
+        return rooms[index(size - 1)];
+    }
+
+    /**
+     * @return The number of rooms remembered, including the current one.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * @return The rooms remembered, oldest first; the last is the current room.
+     */
+    public List<Room> getRooms()
+    {
+        List<Room> list = new ArrayList<>(size);
+        for(int i = 0; i < size; i++) {
+            list.add(rooms[index(i)]);
+        }
+        return list;
+    }
+
+    /**
+     * Forget all rooms and start again from one room.
+     * @param start The room the player is in now.
+     */
+    public void reset(Room start)
+    {
+        Arrays.fill(rooms, null);
+        first = 0;
+        rooms[0] = start;
+        size = 1;
+    }
+
+    /**
+     * Remember that the player has gone into a room.
+     * @param room The room the player is in now.
+     */
+    public void visit(Room room)
+    {
+        if(compressLoops && size > 1 && rooms[index(size - 2)] == room) {
+            removeLast();
+            return;
+        }
+        if(size == rooms.length) {
+            if(capacity > 0) {
+                // forget the oldest room.
+                rooms[first] = null;
+                first = index(1);
+                size--;
+            }
+            else {
+                grow();
+            }
+        }
+        rooms[index(size)] = room;
+        size++;
+    }
+
+    /**
+     * Go back to the previous room.
+     * @return The previous room, which is now the current room, or null
+     *         if there is no previous room to go back to.
+     */
+    public Room back()
+    {
+        if(size <= 1) {
+            return null;
+        }
+        removeLast();
+        return getCurrentRoom();
+    }
+
+    /**
+     * Forget the most recent room.
+     */
+    private void removeLast()
+    {
+        rooms[index(size - 1)] = null;
+        size--;
+    }
+
+    /**
+     * Double the space of an unbounded history, putting the oldest room first.
+     */
+    private void grow()
+    {
+        Room[] larger = new Room[rooms.length * 2];
+        for(int i = 0; i < size; i++) {
+            larger[i] = rooms[index(i)];
+        }
+        rooms = larger;
+        first = 0;
+    }
+
+    /**
+     * @return The place in the buffer of the room that is "offset" rooms
+     *         after the oldest one.
+     */
+    private int index(int offset)
+    {
+        int index = first + offset;
+        return index < rooms.length ? index : index - rooms.length;
+    }
+}
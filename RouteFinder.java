@@ -0,0 +1,635 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Finds the shortest way from one room to another, as the list of
+ * directions to go in.
+ *
+ * When a route finder is created it numbers all rooms and copies the exits
+ * into plain arrays. Small worlds are then searched breadth-first. For
+ * large worlds a few far-apart "landmark" rooms are picked in advance, and
+ * the distances from and to every landmark are stored; these give a lower
+ * bound on the distance left to the goal, which lets an A* search go almost
+ * straight to it instead of looking at every room.
+ *
+ * A route finder may be used by several players at once. forMap() keeps
+ * one finder for all players of a map, which its rooms tell when their
+ * exits change, as when the train comes and goes: the new exits of the
+ * rooms that have changed are kept beside the arrays and searched instead
+ * of theirs. The landmark distances stay lower bounds while exits are
+ * only taken away; while a changed room has an exit the arrays don't,
+ * routes are found breadth-first. Only when an exit leads to a room the
+ * finder doesn't know, or many rooms have changed, is a new finder made
+ * for the map; players of other maps don't wait for it.
+ *
+ * @author Michael Biondi
+ * @version 2026.10.18
+ */
+public class RouteFinder
+{
+    // Worlds with at least this many rooms get landmarks.
+    private static final int LANDMARK_THRESHOLD = 10_000;
+    private static final int LANDMARK_COUNT = 8;
+    // The distance to a room that can't be reached.
+    private static final int UNREACHABLE = Integer.MAX_VALUE;
+    // Rooms whose exits may change before a new finder is made.
+    private static final int MAX_CHANGED_ROOMS = 1024;
+
+    private int roomCount;
+    private String[] directions;
+    private int[] exitStart;
+    private int[] exitDirections;
+    private int[] exitTargets;
+    // The rooms known by object and by name, if the finder was made from rooms.
+    private IdentityHashMap<Room, Integer> roomNumbers;
+    private HashMap<String, Room> roomsByName;
+    private HashMap<String, Integer> directionNumbers;
+    // The exit changes of each room when its exits were read (see
+    // Room.getExitChanges()), if the finder was made from rooms.
+    private int[] exitVersions;
+    // The exits of the rooms whose exits have changed since, by number.
+    private ConcurrentHashMap<Integer, Exits> changedExits;
+    private volatile int addingRooms;   // changed rooms with an exit the arrays don't have
+    private volatile boolean stale;     // whether forMap() should make a new finder
+    private final Object replacing = new Object();  // held while a new finder is made instead
+    // The distances from and to each landmark, kept together per room so
+    // that one room's bounds are read from one place in memory: entry
+    // 2 * (r * landmarkCount + l) is the distance from landmark l to room r,
+    // and the entry after it the distance from room r to landmark l.
+    private int landmarkCount;
+    private int[] landmarkDistances;
+    // Working space for searches, each used by one search at a time.
+    private ConcurrentLinkedQueue<Search> searches;
+
+    /**
+     * Create a route finder over a world stored as exit arrays, as in
+     * CompactWorld: the exits of room r are those from exitStart[r] up to
+     * exitStart[r + 1]. Routes can then be found between room numbers.
+     * @param exitStart Where each room's exits begin, plus one more entry.
+     * @param exitDirections The direction of each exit, as a number.
+     * @param exitTargets The room each exit leads to.
+     * @param directions The names of the directions.
+     */
+    public RouteFinder(int[] exitStart, int[] exitDirections, int[] exitTargets, String[] directions)
+    {
+        this.roomCount = exitStart.length - 1;
+        this.exitStart = exitStart;
+        this.exitDirections = exitDirections;
+        this.exitTargets = exitTargets;
+        this.directions = directions;
+        roomNumbers = new IdentityHashMap<>();
+        roomsByName = new HashMap<>();
+        directionNumbers = new HashMap<>();
+        changedExits = new ConcurrentHashMap<>();
+        searches = new ConcurrentLinkedQueue<>();
+        if(roomCount >= LANDMARK_THRESHOLD) {
+            chooseLandmarks();
+        }
+    }
+
+    /**
+     * Create a route finder over all rooms that can be reached from a room.
+     * Routes can then be found between rooms, or to a room by its name.
+     * @param start A room of the world.
+     * @return The route finder.
+     */
+    public static RouteFinder of(Room start)
+    {
+        IdentityHashMap<Room, Integer> numbers = new IdentityHashMap<>();
+        List<Room> rooms = new ArrayList<>();
+        numbers.put(start, 0);
+        rooms.add(start);
+        HashMap<String, Integer> directionNumbers = new HashMap<>();
+        List<String> directions = new ArrayList<>();
+        List<Integer> exitDirections = new ArrayList<>();
+        List<Integer> exitTargets = new ArrayList<>();
+        List<Integer> exitStart = new ArrayList<>();
+        List<Integer> versions = new ArrayList<>();
+        for(int i = 0; i < rooms.size(); i++) {
+            Room room = rooms.get(i);
+            exitStart.add(exitTargets.size());
+            // Look at the exits once before reading the room's changes, so
+            // that connecting the exits of a world file's room isn't taken
+            // for a change.
+            room.getExitDirections();
+            versions.add(room.getExitChanges());
+            for(String direction : room.getExitDirections()) {
+                Room neighbor = room.getExit(direction);
+                if(neighbor == null) {
+                    // taken away just now; see attach().
+                    continue;
+                }
+                Integer number = numbers.get(neighbor);
+                if(number == null) {
+                    number = rooms.size();
+                    numbers.put(neighbor, number);
+                    rooms.add(neighbor);
+                }
+                Integer directionNumber = directionNumbers.get(direction);
+                if(directionNumber == null) {
+                    directionNumber = directions.size();
+                    directionNumbers.put(direction, directionNumber);
+                    directions.add(direction);
+                }
+                exitDirections.add(directionNumber);
+                exitTargets.add(number);
+            }
+        }
+        exitStart.add(exitTargets.size());
+
+        RouteFinder finder = new RouteFinder(toArray(exitStart), toArray(exitDirections),
+                                             toArray(exitTargets), directions.toArray(new String[0]));
+        finder.roomNumbers = numbers;
+        finder.directionNumbers = directionNumbers;
+        finder.exitVersions = toArray(versions);
+        for(Room room : rooms) {
+            if(room.getName() != null) {
+                finder.roomsByName.putIfAbsent(room.getName(), room);
+            }
+        }
+        return finder;
+    }
+
+    /**
+     * Return the route finder shared by all players of the map a room is
+     * in, making a new one if the map has none yet or its finder can't
+     * keep up with the changes to its exits.
+     * @param room A room of the map.
+     * @return The route finder.
+     */
+    public static RouteFinder forMap(Room room)
+    {
+        RouteFinder finder = room.getRouteFinder();
+        if(finder != null && !finder.stale) {
+            return finder;
+        }
+        if(finder == null) {
+            finder = of(room);
+            finder.attach();
+            return finder;
+        }
+        // Only one new finder is made in place of a stale one.
+        synchronized(finder.replacing) {
+            RouteFinder current = room.getRouteFinder();
+            if(current != null && !current.stale) {
+                return current;
+            }
+            current = of(room);
+            current.attach();
+            return current;
+        }
+    }
+
+    /**
+     * Make this the finder of all of its rooms, and take into account the
+     * exits that changed while it was being made.
+     */
+    private void attach()
+    {
+        for(Map.Entry<Room, Integer> entry : roomNumbers.entrySet()) {
+            Room room = entry.getKey();
+            RouteFinder previous = room.getRouteFinder();
+            if(previous != null && previous != this) {
+                // it won't be told about this room's exits any more.
+                previous.stale = true;
+            }
+            room.setRouteFinder(this);
+            if(room.getExitChanges() != exitVersions[entry.getValue()]) {
+                exitsChanged(room);
+            }
+        }
+    }
+
+    /**
+     * Take a change to the exits of one of this finder's rooms into
+     * account.
+     * @param room The room whose exits have changed.
+     */
+    public void exitsChanged(Room room)
+    {
+        Integer number = roomNumbers.get(room);
+        if(number == null) {
+            return;
+        }
+        // Lock the room first, as Room.setExit() does, so that its exits
+        // can't change while they are read.
+        synchronized(room) {
+            synchronized(this) {
+                Collection<String> current = room.getExitDirections();
+                int[] newDirections = new int[current.size()];
+                int[] newTargets = new int[current.size()];
+                boolean adds = false;
+                int n = 0;
+                for(String direction : current) {
+                    Integer target = roomNumbers.get(room.getExit(direction));
+                    Integer directionNumber = directionNumbers.get(direction);
+                    if(target == null || directionNumber == null) {
+                        // the exit leads somewhere new.
+                        stale = true;
+                        return;
+                    }
+                    newDirections[n] = directionNumber;
+                    newTargets[n] = target;
+                    adds |= !hasExit(number, directionNumber, target);
+                    n++;
+                }
+                Exits old = changedExits.get(number);
+                if(old != null && old.adds) {
+                    addingRooms--;
+                }
+                if(!adds && n == exitStart[number + 1] - exitStart[number]) {
+                    // back to the exits the arrays have.
+                    changedExits.remove(number);
+                }
+                else {
+                    changedExits.put(number, new Exits(newDirections, newTargets, adds));
+                    if(adds) {
+                        addingRooms++;
+                    }
+                }
+                if(changedExits.size() > MAX_CHANGED_ROOMS) {
+                    stale = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Whether the arrays have an exit from a room in a direction
+     *         to another room.
+     */
+    private boolean hasExit(int room, int direction, int target)
+    {
+        for(int exit = exitStart[room]; exit < exitStart[room + 1]; exit++) {
+            if(exitDirections[exit] == direction && exitTargets[exit] == target) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Find a room by its name.
+     * @param name The name of the room.
+     * @return The room, or null if there is no room with that name.
+     */
+    public Room getRoom(String name)
+    {
+        return roomsByName.get(name);
+    }
+
+    /**
+     * Find the shortest route between two rooms.
+     * @param from The room to start in.
+     * @param to The room to get to.
+     * @return The directions to go in, in order, or null if there is no
+     *         way to get there (or a room isn't known to this finder).
+     */
+    public List<String> findRoute(Room from, Room to)
+    {
+        Integer fromNumber = roomNumbers.get(from);
+        Integer toNumber = roomNumbers.get(to);
+        if(fromNumber == null || toNumber == null) {
+            return null;
+        }
+        return findRoute(fromNumber, toNumber);
+    }
+
+    /**
+     * Find the shortest route between two numbered rooms.
+     * @param from The number of the room to start in.
+     * @param to The number of the room to get to.
+     * @return The directions to go in, in order, or null if there is no
+     *         way to get there.
+     */
+    public List<String> findRoute(int from, int to)
+    {
+        Search search = searches.poll();
+        if(search == null) {
+            search = new Search(roomCount);
+        }
+        try {
+            Map<Integer, Exits> changed = changedExits.isEmpty() ? null : changedExits;
+            boolean found = landmarkDistances == null || addingRooms > 0 ? search.breadthFirst(from, to, changed)
+                                                                        : search.aStar(from, to, changed);
+            if(!found) {
+                return null;
+            }
+            List<String> route = new ArrayList<>();
+            for(int room = to; room != from; ) {
+                route.add(directions[search.arrivedBy[room]]);
+                room = search.cameFrom[room];
+            }
+            Collections.reverse(route);
+            return route;
+        }
+        finally {
+            searches.add(search);
+        }
+    }
+
+    /**
+     * Pick landmarks far away from each other, and find the distances
+     * from and to each of them.
+     */
+    private void chooseLandmarks()
+    {
+        int[] reverseStart = new int[roomCount + 1];
+        int[] reverseSources = new int[exitTargets.length];
+        for(int target : exitTargets) {
+            reverseStart[target + 1]++;
+        }
+        for(int room = 0; room < roomCount; room++) {
+            reverseStart[room + 1] += reverseStart[room];
+        }
+        int[] filled = Arrays.copyOf(reverseStart, roomCount);
+        for(int room = 0; room < roomCount; room++) {
+            for(int exit = exitStart[room]; exit < exitStart[room + 1]; exit++) {
+                reverseSources[filled[exitTargets[exit]]++] = room;
+            }
+        }
+
+        List<int[]> from = new ArrayList<>();
+        List<int[]> to = new ArrayList<>();
+        // closest[r] is the distance from the nearest landmark so far to r.
+        int[] closest = distances(0, exitStart, exitTargets);
+        for(int l = 0; l < LANDMARK_COUNT; l++) {
+            int landmark = -1;
+            for(int room = 0; room < roomCount; room++) {
+                if(closest[room] != UNREACHABLE && (landmark < 0 || closest[room] > closest[landmark])) {
+                    landmark = room;
+                }
+            }
+            if(landmark < 0 || (l > 0 && closest[landmark] == 0)) {
+                break;
+            }
+            int[] fromLandmark = distances(landmark, exitStart, exitTargets);
+            from.add(fromLandmark);
+            to.add(distances(landmark, reverseStart, reverseSources));
+            for(int room = 0; room < roomCount; room++) {
+                closest[room] = l == 0 ? fromLandmark[room] : Math.min(closest[room], fromLandmark[room]);
+            }
+        }
+
+        landmarkCount = from.size();
+        landmarkDistances = new int[2 * roomCount * landmarkCount];
+        for(int l = 0; l < landmarkCount; l++) {
+            for(int room = 0; room < roomCount; room++) {
+                landmarkDistances[2 * (room * landmarkCount + l)] = from.get(l)[room];
+                landmarkDistances[2 * (room * landmarkCount + l) + 1] = to.get(l)[room];
+            }
+        }
+    }
+
+    /**
+     * Find the distance from one room to every other room, breadth-first.
+     */
+    private int[] distances(int source, int[] start, int[] targets)
+    {
+        int[] distance = new int[roomCount];
+        Arrays.fill(distance, UNREACHABLE);
+        int[] queue = new int[roomCount];
+        int head = 0;
+        int tail = 0;
+        distance[source] = 0;
+        queue[tail++] = source;
+        while(head < tail) {
+            int room = queue[head++];
+            for(int exit = start[room]; exit < start[room + 1]; exit++) {
+                int next = targets[exit];
+                if(distance[next] == UNREACHABLE) {
+                    distance[next] = distance[room] + 1;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        return distance;
+    }
+
+    /**
+     * @return A lower bound on the distance from a room to the goal,
+     *         worked out from the landmark distances.
+     */
+    private int lowerBound(int room, int goal)
+    {
+        int bound = 0;
+        int roomEntry = 2 * room * landmarkCount;
+        int goalEntry = 2 * goal * landmarkCount;
+        for(int l = 0; l < 2 * landmarkCount; l += 2) {
+            int fromToRoom = landmarkDistances[roomEntry + l];
+            int fromToGoal = landmarkDistances[goalEntry + l];
+            int roomToLandmark = landmarkDistances[roomEntry + l + 1];
+            int goalToLandmark = landmarkDistances[goalEntry + l + 1];
+            // d(room, goal) >= d(landmark, goal) - d(landmark, room)
+            if(fromToGoal != UNREACHABLE && fromToRoom != UNREACHABLE) {
+                bound = Math.max(bound, fromToGoal - fromToRoom);
+            }
+            // d(room, goal) >= d(room, landmark) - d(goal, landmark)
+            if(roomToLandmark != UNREACHABLE && goalToLandmark != UNREACHABLE) {
+                bound = Math.max(bound, roomToLandmark - goalToLandmark);
+            }
+        }
+        return bound;
+    }
+
+    private static int[] toArray(List<Integer> list)
+    {
+        int[] array = new int[list.size()];
+        for(int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+    /**
+     * The exits a room has now, when they differ from those in the arrays.
+     */
+    private static class Exits
+    {
+        private final int[] directions;
+        private final int[] targets;
+        private final boolean adds;     // whether the room has an exit the arrays don't
+
+        private Exits(int[] directions, int[] targets, boolean adds)
+        {
+            this.directions = directions;
+            this.targets = targets;
+            this.adds = adds;
+        }
+    }
+
+    /**
+     * The working space of one search at a time. Instead of clearing the
+     * arrays before every search, each search gets a new mark, and a room
+     * counts as seen only if it carries the current mark.
+     */
+    private class Search
+    {
+        private int[] seen;
+        private int mark;
+        private int[] distance;
+        private int[] cameFrom;
+        private int[] arrivedBy;        // the direction each room was reached in
+        private int[] queue;
+        // A binary heap of rooms to visit, ordered by their keys.
+        private long[] heapKeys;
+        private int[] heapRooms;
+        private int heapSize;
+
+        private Search(int roomCount)
+        {
+            seen = new int[roomCount];
+            distance = new int[roomCount];
+            cameFrom = new int[roomCount];
+            arrivedBy = new int[roomCount];
+            queue = new int[roomCount];
+            heapKeys = new long[16];
+            heapRooms = new int[16];
+        }
+
+        /**
+         * Start a new search, forgetting all rooms seen before.
+         */
+        private void reset()
+        {
+            mark++;
+            if(mark == 0) {
+                Arrays.fill(seen, 0);
+                mark = 1;
+            }
+            heapSize = 0;
+        }
+
+        /**
+         * Search breadth-first from one room until the goal is found.
+         * @param changed The rooms whose exits have changed, or null.
+         * @return true if the goal can be reached.
+         */
+        private boolean breadthFirst(int from, int goal, Map<Integer, Exits> changed)
+        {
+            reset();
+            int head = 0;
+            int tail = 0;
+            seen[from] = mark;
+            queue[tail++] = from;
+            while(head < tail) {
+                int room = queue[head++];
+                if(room == goal) {
+                    return true;
+                }
+                Exits exits = changed == null ? null : changed.get(room);
+                int[] targets = exits == null ? exitTargets : exits.targets;
+                int[] ways = exits == null ? exitDirections : exits.directions;
+                int end = exits == null ? exitStart[room + 1] : targets.length;
+                for(int exit = exits == null ? exitStart[room] : 0; exit < end; exit++) {
+                    int next = targets[exit];
+                    if(seen[next] != mark) {
+                        seen[next] = mark;
+                        cameFrom[next] = room;
+                        arrivedBy[next] = ways[exit];
+                        queue[tail++] = next;
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Search from one room towards the goal, always going on from the
+         * room whose route (so far, plus the lower bound of what is left)
+         * is shortest.
+         * @param changed The rooms whose exits have changed, none of them
+         *                with an exit the arrays don't have; or null.
+         * @return true if the goal can be reached.
+         */
+        private boolean aStar(int from, int goal, Map<Integer, Exits> changed)
+        {
+            reset();
+            seen[from] = mark;
+            distance[from] = 0;
+            push(from, 0, lowerBound(from, goal));
+            while(heapSize > 0) {
+                long key = heapKeys[0];
+                int room = pop();
+                if(room == goal) {
+                    return true;
+                }
+                // skip rooms that were pushed again with a shorter route.
+                if(distance[room] != Integer.MAX_VALUE - (int) key) {
+                    continue;
+                }
+                Exits exits = changed == null ? null : changed.get(room);
+                int[] targets = exits == null ? exitTargets : exits.targets;
+                int[] ways = exits == null ? exitDirections : exits.directions;
+                int end = exits == null ? exitStart[room + 1] : targets.length;
+                for(int exit = exits == null ? exitStart[room] : 0; exit < end; exit++) {
+                    int next = targets[exit];
+                    int nextDistance = distance[room] + 1;
+                    if(seen[next] != mark || nextDistance < distance[next]) {
+                        seen[next] = mark;
+                        distance[next] = nextDistance;
+                        cameFrom[next] = room;
+                        arrivedBy[next] = ways[exit];
+                        push(next, nextDistance, nextDistance + lowerBound(next, goal));
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Add a room to the heap. Rooms with a smaller estimate come
+         * first; among equal estimates, those further from the start.
+         */
+        private void push(int room, int distanceSoFar, int estimate)
+        {
+            if(heapSize == heapKeys.length) {
+                heapKeys = Arrays.copyOf(heapKeys, heapSize * 2);
+                heapRooms = Arrays.copyOf(heapRooms, heapSize * 2);
+            }
+            long key = ((long) estimate << 32) | (Integer.MAX_VALUE - distanceSoFar);
+            int i = heapSize++;
+            while(i > 0 && heapKeys[(i - 1) / 2] > key) {
+                heapKeys[i] = heapKeys[(i - 1) / 2];
+                heapRooms[i] = heapRooms[(i - 1) / 2];
+                i = (i - 1) / 2;
+            }
+            heapKeys[i] = key;
+            heapRooms[i] = room;
+        }
+
+        /**
+         * Remove the first room from the heap.
+         */
+        private int pop()
+        {
+            int first = heapRooms[0];
+            long key = heapKeys[--heapSize];
+            int room = heapRooms[heapSize];
+            int i = 0;
+            while(2 * i + 1 < heapSize) {
+                int child = 2 * i + 1;
+                if(child + 1 < heapSize && heapKeys[child + 1] < heapKeys[child]) {
+                    child++;
+                }
+                if(heapKeys[child] >= key) {
+                    break;
+                }
+                heapKeys[i] = heapKeys[child];
+                heapRooms[i] = heapRooms[child];
+                i = child;
+            }
+            heapKeys[i] = key;
+            heapRooms[i] = room;
+            return first;
+        }
+    }
+}
@@ -0,0 +1,694 @@
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Finds the rooms whose names and descriptions, or whose items, mention
+ * a word, such as "guitar" or "skyscrapers", best matches first.
+ *
+ * The index is inverted: for every word it keeps the list of rooms that
+ * mention it, with how often they do. The lists are kept compact: each
+ * room number is written as the gap from the one before it and packed into
+ * as few bytes as it needs, together with the count, so most entries take
+ * two bytes. A search reads the list of each word it is given and scores
+ * each room by how often it mentions the word, and by how rare the word
+ * is, so that a rare word counts for more than a common one.
+ *
+ * The index is built from the rooms that can be reached from a room, and
+ * then kept up to date as items are taken and dropped: a room tells its
+ * index about each item that comes or goes, and only the lists of that
+ * item's words change. The changes to a word's list are collected beside it,
+ * and only written into it once enough of them have piled up, so that
+ * moving an item doesn't rewrite a long list. A map has one index, which
+ * all players share; rooms remember it (see Room.getSearchIndex()).
+ *
+ * A world file is indexed from its tables instead, room by room in the
+ * order of the file, so its rooms are only built when a search finds them
+ * (see WorldFile). An instance of a map (see WorldInstance) shares the
+ * index of the map it was made from and only keeps the changes to the
+ * items of its own rooms, which are added to the shared lists as they are
+ * read; a room of the instance is only made when a search finds it.
+ *
+ * An item counts once for each thing in it, so a stack of three torches
+ * mentions "torch" three times.
+ *
+ * Words are compared in lower case, without a plural "s", and common
+ * little words such as "the" are left out.
+ *
+ * @author Michael Biondi
+ * @version 2026.10.18
+ */
+public class SearchIndex
+{
+    // The number of results a search shows, unless asked for more.
+    public static final int DEFAULT_RESULTS = 10;
+    // Words too common to search for.
+    private static final Set<String> STOP_WORDS = Set.of(
+        "a", "an", "and", "are", "as", "at", "by", "for", "from", "in", "into", "is", "it", "of",
+        "on", "or", "that", "the", "to", "with", "you", "your");
+    // Changes collected beside a word's list before they are written into
+    // it, at least; a long list collects more.
+    private static final int MIN_CHANGES = 32;
+
+    private List<Room> rooms;                               // the rooms walked through, by number, or null
+    private IdentityHashMap<Room, Integer> numbers;         // the number of each room walked through
+    private WorldFile world;                    // the world file indexed, or null
+    private SearchIndex shared;                 // for an instance, the index of the shared map, or null
+    private WorldInstance instance;             // the instance whose changes are kept, or null
+    private int roomCount;
+    private ConcurrentHashMap<String, Postings> words;      // the list of rooms of each word
+    private ConcurrentHashMap<ItemType, Postings[]> itemWords; // the lists of the words of each item type
+
+    /**
+     * Return the index of the map a room is in, building it if the map
+     * has none yet. The map's items should not change while it is built;
+     * a shared map is best indexed before anyone plays in it, and before
+     * a WorldScheduler takes any rooms out of reach.
+     * @param start A room of the map.
+     * @return The index of the map.
+     * @throws IllegalArgumentException If the map is a generated one,
+     *         which has no end to index.
+     */
+    public static synchronized SearchIndex of(Room start)
+    {
+        if(GeneratedWorld.worldOf(start) != null) {
+            throw new IllegalArgumentException("a generated world has no end to index");
+        }
+        SearchIndex index = start.getSearchIndex();
+        if(index != null) {
+            return index;
+        }
+        WorldInstance instance = WorldInstance.instanceOf(start);
+        WorldFile world = WorldFile.worldOf(start);
+        if(instance != null) {
+            index = new SearchIndex(of(instance.getSharedRoom(start)), instance);
+            instance.setSearchIndex(index);
+        }
+        else if(world != null) {
+            index = new SearchIndex(world);
+            world.setSearchIndex(index);
+        }
+        else {
+            index = new SearchIndex(start);
+        }
+        return index;
+    }
+
+    /**
+     * Index the rooms that can be reached from a room, leaving out those
+     * that already belong to another index.
+     */
+    private SearchIndex(Room start)
+    {
+        rooms = new ArrayList<>();
+        numbers = new IdentityHashMap<>();
+        rooms.add(start);
+        numbers.put(start, 0);
+        for(int i = 0; i < rooms.size(); i++) {
+            for(String direction : rooms.get(i).getExitDirections()) {
+                Room neighbor = rooms.get(i).getExit(direction);
+                if(!numbers.containsKey(neighbor) && neighbor.getSearchIndex() == null) {
+                    numbers.put(neighbor, rooms.size());
+                    rooms.add(neighbor);
+                }
+            }
+        }
+        roomCount = rooms.size();
+
+        words = new ConcurrentHashMap<>();
+        itemWords = new ConcurrentHashMap<>();
+        for(int number = 0; number < roomCount; number++) {
+            Room room = rooms.get(number);
+            addRoom(number, room.getName(), room.getShortDescription(), room.getItems());
+            room.setSearchIndex(this);
+        }
+        finish();
+    }
+
+    /**
+     * Index all rooms of a world file, numbered as in the file. The rooms
+     * built so far are indexed with the items they have now, the others
+     * with the items they start with.
+     */
+    private SearchIndex(WorldFile world)
+    {
+        this.world = world;
+        roomCount = world.getRoomCount();
+        words = new ConcurrentHashMap<>();
+        itemWords = new ConcurrentHashMap<>();
+        for(int number = 0; number < roomCount; number++) {
+            addRoom(number, world.getName(number), world.getDescription(number), world.getItems(number));
+        }
+        finish();
+    }
+
+    /**
+     * Keep the changes to the items of an instance of a map, on top of
+     * the index of the map itself. The rooms whose items have changed so
+     * far are counted straight away.
+     */
+    private SearchIndex(SearchIndex shared, WorldInstance instance)
+    {
+        this.shared = shared;
+        this.instance = instance;
+        roomCount = shared.roomCount;
+        words = new ConcurrentHashMap<>();
+        itemWords = new ConcurrentHashMap<>();
+        for(Room room : instance.getChangedRooms()) {
+            int number = numberOf(room);
+            if(number >= 0) {
+                for(Item item : room.getItems()) {
+                    change(number, item, item.getCount());
+                }
+                for(Item item : instance.getSharedRoom(room).getItems()) {
+                    change(number, item, -item.getCount());
+                }
+            }
+        }
+    }
+
+    /**
+     * Count the words of a room and of its items, while the index is built.
+     */
+    private void addRoom(int number, String name, String description, List<Item> items)
+    {
+        for(String word : words(name == null ? description : name + " " + description)) {
+            getPostings(word).add(number, 1);
+        }
+        for(Item item : items) {
+            for(Postings postings : postingsOf(item)) {
+                postings.add(number, item.getCount());
+            }
+        }
+    }
+
+    /**
+     * Write the last rooms added, once the index has been built.
+     */
+    private void finish()
+    {
+        for(Postings postings : words.values()) {
+            postings.finish();
+        }
+    }
+
+    /**
+     * @return The number of rooms indexed.
+     */
+    public int getRoomCount()
+    {
+        return roomCount;
+    }
+
+    /**
+     * @return All rooms indexed, by number: for a map walked through, in
+     *         the order they were first reached from the starting room. The
+     *         rooms of a world file or an instance are only built (or made)
+     *         as they are looked at.
+     */
+    public List<Room> getRooms()
+    {
+        if(rooms != null) {
+            return rooms;
+        }
+        return new AbstractList<Room>() {
+            @Override
+            public Room get(int number)
+            {
+                return roomOf(number);
+            }
+
+            @Override
+            public int size()
+            {
+                return roomCount;
+            }
+        };
+    }
+
+    /**
+     * @return The number of different words indexed.
+     */
+    public int getWordCount()
+    {
+        return words.size();
+    }
+
+    /**
+     * @return The number of bytes taken by the lists of rooms of all words.
+     */
+    public long getPostingsBytes()
+    {
+        long bytes = 0;
+        for(Postings postings : words.values()) {
+            bytes += postings.getBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Find the rooms that best match some words.
+     * @param query The words to look for.
+     * @param limit The most rooms to return.
+     * @return The rooms that mention any of the words, best matches first;
+     *         rooms that match equally well are in the order in which they
+     *         are reached from the map's starting room.
+     */
+    public List<Room> search(String query, int limit)
+    {
+        Matches matches = null;
+        for(String word : words(query)) {
+            Postings postings;
+            Postings changes = null;
+            if(shared != null) {
+                postings = shared.words.get(word);
+                changes = words.get(word);
+                if(postings == null && changes != null) {
+                    postings = new Postings(false);
+                }
+            }
+            else {
+                postings = words.get(word);
+            }
+            if(postings != null) {
+                Matches more = postings.matches(roomCount, changes);
+                matches = matches == null ? more : matches.plus(more);
+            }
+        }
+        List<Room> found = new ArrayList<>();
+        if(matches == null || limit <= 0) {
+            return found;
+        }
+
+        // Keep the best rooms seen so far, best first.
+        int[] best = new int[limit];
+        int count = 0;
+        for(int i = 0; i < matches.size; i++) {
+            float score = matches.scores[i];
+            if(count < limit || score > matches.scores[best[count - 1]]) {
+                int j = count < limit ? count++ : count - 1;
+                while(j > 0 && matches.scores[best[j - 1]] < score) {
+                    best[j] = best[j - 1];
+                    j--;
+                }
+                best[j] = i;
+            }
+        }
+        for(int i = 0; i < count; i++) {
+            found.add(roomOf(matches.rooms[best[i]]));
+        }
+        return found;
+    }
+
+    /**
+     * Return the number of a room.
+     * @return The number, or -1 if the room isn't indexed.
+     */
+    private int numberOf(Room room)
+    {
+        if(instance != null) {
+            Room sharedRoom = instance.getSharedRoom(room);
+            return sharedRoom == null ? -1 : shared.numberOf(sharedRoom);
+        }
+        if(world != null) {
+            return world.getNumber(room);
+        }
+        Integer number = numbers.get(room);
+        return number == null ? -1 : number;
+    }
+
+    /**
+     * Return the room with a number, building it if it is a room of a
+     * world file that hasn't been built yet.
+     */
+    private Room roomOf(int number)
+    {
+        if(instance != null) {
+            return instance.getRoom(shared.roomOf(number));
+        }
+        if(world != null) {
+            return world.getRoom(number);
+        }
+        return rooms.get(number);
+    }
+
+    /**
+     * Note that an item has come into a room or left it. Only the lists
+     * of the item's own words change.
+     * @param room The room.
+     * @param item The item, or the part of a stack, that came or went.
+     * @param added Whether it came into the room, rather than left it.
+     */
+    public void update(Room room, Item item, boolean added)
+    {
+        int number = numberOf(room);
+        if(number < 0) {
+            // the room couldn't be reached when the map was indexed.
+            return;
+        }
+        change(number, item, added ? item.getCount() : -item.getCount());
+    }
+
+    /**
+     * Change the number of mentions of an item's words by a room.
+     */
+    private void change(int number, Item item, int difference)
+    {
+        for(Postings postings : postingsOf(item)) {
+            postings.change(number, difference);
+        }
+    }
+
+    /**
+     * Return the lists of the words of an item, one entry for every time
+     * a word is used. The lists of an item type are only looked up once.
+     */
+    private Postings[] postingsOf(Item item)
+    {
+        Postings[] postings = itemWords.get(item.getType());
+        if(postings == null) {
+            List<String> itemText = words(item.getName() + " " + item.getDescription());
+            postings = new Postings[itemText.size()];
+            for(int i = 0; i < postings.length; i++) {
+                postings[i] = getPostings(itemText.get(i));
+            }
+            itemWords.putIfAbsent(item.getType(), postings);
+        }
+        return postings;
+    }
+
+    private Postings getPostings(String word)
+    {
+        return words.computeIfAbsent(word, w -> new Postings(instance == null));
+    }
+
+    /**
+     * Split a text into the words that are indexed: runs of letters and
+     * digits, in lower case, without a plural "s", and without stop words.
+     * @param text The text.
+     * @return Its words, in order.
+     */
+    private static List<String> words(String text)
+    {
+        List<String> found = new ArrayList<>();
+        int start = -1;
+        for(int i = 0; i <= text.length(); i++) {
+            boolean inWord = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if(inWord && start < 0) {
+                start = i;
+            }
+            else if(!inWord && start >= 0) {
+                String word = text.substring(start, i).toLowerCase(Locale.ROOT);
+                if(word.length() > 3 && word.endsWith("s") && !word.endsWith("ss")) {
+                    word = word.substring(0, word.length() - 1);
+                }
+                if(!STOP_WORDS.contains(word)) {
+                    found.add(word);
+                }
+                start = -1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Something done with each room in a list, with the number of times
+     * the room mentions the word.
+     */
+    private interface Visitor
+    {
+        void visit(int room, int count);
+    }
+
+    /**
+     * The rooms that match a search so far, in order of their numbers,
+     * with their scores.
+     */
+    private static class Matches
+    {
+        private int[] rooms;
+        private float[] scores;
+        private int size;
+
+        private Matches(int capacity)
+        {
+            rooms = new int[capacity];
+            scores = new float[capacity];
+        }
+
+        private void add(int room, float score)
+        {
+            rooms[size] = room;
+            scores[size] = score;
+            size++;
+        }
+
+        /**
+         * @return The rooms that match either these or other matches,
+         *         with the scores of rooms that match both added up.
+         */
+        private Matches plus(Matches other)
+        {
+            Matches both = new Matches(size + other.size);
+            int i = 0;
+            int j = 0;
+            while(i < size || j < other.size) {
+                if(j == other.size || (i < size && rooms[i] < other.rooms[j])) {
+                    both.add(rooms[i], scores[i]);
+                    i++;
+                }
+                else if(i == size || other.rooms[j] < rooms[i]) {
+                    both.add(other.rooms[j], other.scores[j]);
+                    j++;
+                }
+                else {
+                    both.add(rooms[i], scores[i] + other.scores[j]);
+                    i++;
+                    j++;
+                }
+            }
+            return both;
+        }
+    }
+
+    /**
+     * The list of rooms that mention one word. The rooms are written in
+     * order of their numbers: the gap from the previous room, less one,
+     * and then the number of mentions, each in 7-bit groups, lowest first,
+     * with the top bit set on all groups but the last. Changes since the
+     * list was last written are kept beside it, as the number of mentions
+     * gained (or lost) by each room. The list of an instance only has
+     * changes, to the list of the shared map, and is never written.
+     */
+    private static class Postings
+    {
+        private byte[] data;
+        private int length;
+        private int lastRoom;       // the last room written
+        private int written;        // the number of rooms written
+        private int pendingRoom;    // the room being added while the index is built, or -1
+        private int pendingCount;
+        private TreeMap<Integer, Integer> changes;  // by room, or null if there are none
+        private boolean writable;   // whether changes are written into the list
+
+        private Postings(boolean writable)
+        {
+            this.writable = writable;
+            data = new byte[4];
+            lastRoom = -1;
+            pendingRoom = -1;
+        }
+
+        /**
+         * Count more mentions by a room, while the index is built; rooms
+         * are added in order.
+         */
+        private synchronized void add(int room, int mentions)
+        {
+            if(room == pendingRoom) {
+                pendingCount += mentions;
+            }
+            else {
+                if(pendingRoom >= 0) {
+                    write(pendingRoom, pendingCount);
+                }
+                pendingRoom = room;
+                pendingCount = mentions;
+            }
+        }
+
+        /**
+         * Write the last room added, once the index has been built.
+         */
+        private synchronized void finish()
+        {
+            if(pendingRoom >= 0) {
+                write(pendingRoom, pendingCount);
+                pendingRoom = -1;
+            }
+            data = Arrays.copyOf(data, length);
+        }
+
+        private synchronized long getBytes()
+        {
+            return data.length + (changes == null ? 0 : changes.size() * 48L);
+        }
+
+        /**
+         * Change the number of mentions by a room.
+         */
+        private synchronized void change(int room, int difference)
+        {
+            if(changes == null) {
+                changes = new TreeMap<>();
+            }
+            if(changes.merge(room, difference, Integer::sum) == 0) {
+                changes.remove(room);
+            }
+            if(writable && pendingRoom < 0 && changes.size() > MIN_CHANGES + written / 8) {
+                rewrite();
+            }
+        }
+
+        /**
+         * Return the rooms that mention the word, each scored by how often
+         * it does, and by how few rooms do.
+         * @param roomCount The number of rooms indexed.
+         * @param more The changes of an instance to the list, or null.
+         */
+        private synchronized Matches matches(int roomCount, Postings more)
+        {
+            TreeMap<Integer, Integer> allChanges = changes;
+            if(more != null) {
+                allChanges = changes == null ? new TreeMap<>() : new TreeMap<>(changes);
+                more.addChangesTo(allChanges);
+            }
+            Matches matches = new Matches(written + (allChanges == null ? 0 : allChanges.size()));
+            visit(data, length, allChanges,
+                  (room, count) -> matches.add(room, count == 1 ? 1 : 1 + (float) Math.log(count)));
+            float rarity = (float) Math.log(1.0 + (double) roomCount / Math.max(matches.size, 1));
+            for(int i = 0; i < matches.size; i++) {
+                matches.scores[i] *= rarity;
+            }
+            return matches;
+        }
+
+        /**
+         * Add this list's changes to those of another.
+         */
+        private synchronized void addChangesTo(TreeMap<Integer, Integer> other)
+        {
+            if(changes != null) {
+                for(Map.Entry<Integer, Integer> change : changes.entrySet()) {
+                    if(other.merge(change.getKey(), change.getValue(), Integer::sum) == 0) {
+                        other.remove(change.getKey());
+                    }
+                }
+            }
+        }
+
+        /**
+         * Write the changes into the list.
+         */
+        private void rewrite()
+        {
+            byte[] oldData = data;
+            int oldLength = length;
+            TreeMap<Integer, Integer> oldChanges = changes;
+            data = new byte[Math.max(oldLength + oldChanges.size() * 2, 4)];
+            length = 0;
+            lastRoom = -1;
+            written = 0;
+            changes = null;
+            visit(oldData, oldLength, oldChanges, this::write);
+            data = Arrays.copyOf(data, length);
+        }
+
+        /**
+         * Visit the rooms of a list, with the changes to it, in order.
+         */
+        private static void visit(byte[] data, int length, TreeMap<Integer, Integer> changes,
+                                  Visitor visitor)
+        {
+            Iterator<Map.Entry<Integer, Integer>> pending =
+                changes == null ? null : changes.entrySet().iterator();
+            Map.Entry<Integer, Integer> change = pending != null && pending.hasNext() ? pending.next() : null;
+            int position = 0;
+            int room = -1;
+            while(position < length || change != null) {
+                int nextRoom = Integer.MAX_VALUE;
+                int count = 0;
+                int next = position;
+                if(position < length) {
+                    int value = 0;
+                    int shift = 0;
+                    byte b;
+                    do {
+                        b = data[next++];
+                        value |= (b & 0x7f) << shift;
+                        shift += 7;
+                    } while(b < 0);
+                    nextRoom = room + 1 + value;
+                    value = 0;
+                    shift = 0;
+                    do {
+                        b = data[next++];
+                        value |= (b & 0x7f) << shift;
+                        shift += 7;
+                    } while(b < 0);
+                    count = value;
+                }
+                if(change != null && change.getKey() <= nextRoom) {
+                    if(change.getKey() == nextRoom) {
+                        count += change.getValue();
+                        room = nextRoom;
+                        position = next;
+                    }
+                    else {
+                        nextRoom = change.getKey();
+                        count = change.getValue();
+                    }
+                    change = pending.hasNext() ? pending.next() : null;
+                }
+                else {
+                    room = nextRoom;
+                    position = next;
+                }
+                if(count > 0) {
+                    visitor.visit(nextRoom, count);
+                }
+            }
+        }
+
+        /**
+         * Write a room at the end of the list.
+         */
+        private void write(int room, int count)
+        {
+            if(data.length - length < 10) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, length + 10));
+            }
+            writeNumber(room - lastRoom - 1);
+            writeNumber(count);
+            lastRoom = room;
+            written++;
+        }
+
+        private void writeNumber(int value)
+        {
+            while((value & ~0x7f) != 0) {
+                data[length++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            data[length++] = (byte) value;
+        }
+    }
+}
@@ -0,0 +1,630 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A server like GameServer that plays thousands of sessions on a few
+ * threads, rather than on a thread each.
+ *
+ * Clients are accepted on the thread that calls serve() and handed out
+ * in turn to a few event loops, each a thread with a Selector of its own.
+ * A loop reads whatever its clients have sent, cuts it into lines, and
+ * hands each line to the client's Game; a session has no thread and no
+ * blocking reader, just a small buffer of input not yet made into lines.
+ * A session belongs to one loop, so its game is only ever played on that
+ * loop's thread.
+ *
+ * What a game writes is collected until the game flushes it, then encoded
+ * into direct buffers taken from a pool kept by each loop, and written
+ * out as far as the client will take it; the rest is written when the
+ * client is ready for more. A client that sends commands faster than it
+ * reads the answers gets no more of its input read until it has caught
+ * up, so a slow client can't make the server hold more than about
+ * HIGH_WATER bytes of output for it.
+ *
+ * Players are told what the others in the same room do (see EventBus)
+ * as it happens: when there is something new, the player's loop shows it
+ * and prompts again. While a client is behind with its output, what
+ * happens is left with its Subscriber, which keeps only a summary, and
+ * shown once the client has caught up. A shared map is kept going by a
+ * WorldScheduler, as with GameServer.
+ *
+ * @author Michael Biondi
+ * @version 2026.10.18
+ */
+public class SelectorServer
+{
+    // How many connections may wait to be accepted at once.
+    private static final int ACCEPT_BACKLOG = 1024;
+    // The size of the direct buffers output is written from.
+    private static final int BUFFER_SIZE = 8 * 1024;
+    // Unused buffers each loop keeps for later, at most.
+    private static final int POOLED_BUFFERS = 256;
+    // The longest line read from a client; the rest of a longer line is ignored.
+    private static final int MAX_LINE = 512;
+    // Bytes of output waiting for a client above which its input is left
+    // unread until they have been sent.
+    private static final int HIGH_WATER = 64 * 1024;
+    private static final String NEWLINE = System.lineSeparator();
+
+    private ServerSocketChannel serverChannel;
+    private Room startingRoom;
+    private boolean privateWorlds;
+    private CommandRegistry commands;
+    private EventLoop[] loops;
+    private AtomicInteger activeSessions;
+    private AtomicInteger players;      // players who have joined, to number them
+    private EventBus events;
+    private WorldScheduler scheduler;   // keeps the shared map going, or null
+    private volatile boolean running;
+
+    /**
+     * Create a server listening on the given port of the local machine,
+     * with an event loop for each processor.
+     *
+     * @param port The port to listen on, or 0 for any free port.
+     * @param startingRoom The room in which players start.
+     * @param privateWorlds Whether each session gets its own instance of
+     *                      the map, rather than all sharing one.
+     * @throws IOException If the port can't be opened.
+     */
+    public SelectorServer(int port, Room startingRoom, boolean privateWorlds) throws IOException
+    {
+        this(port, startingRoom, privateWorlds, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create a server listening on the given port of the local machine.
+     *
+     * @param port The port to listen on, or 0 for any free port.
+     * @param startingRoom The room in which players start.
+     * @param privateWorlds Whether each session gets its own instance of
+     *                      the map, rather than all sharing one.
+     * @param loopCount The number of event loops sessions are shared out to.
+     * @throws IOException If the port can't be opened.
+     */
+    public SelectorServer(int port, Room startingRoom, boolean privateWorlds, int loopCount)
+        throws IOException
+    {
+        this.startingRoom = startingRoom;
+        this.privateWorlds = privateWorlds;
+        commands = Game.createCommands();
+        activeSessions = new AtomicInteger();
+        players = new AtomicInteger();
+        events = new EventBus();
+        if(GeneratedWorld.worldOf(startingRoom) == null) {
+            // index the map before anyone can move its items, and before
+            // the train takes the city out of reach.
+            SearchIndex.of(startingRoom);
+        }
+        if(!privateWorlds) {
+            scheduler = WorldScheduler.createFor(startingRoom, events);
+        }
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), ACCEPT_BACKLOG);
+        loops = new EventLoop[loopCount];
+        for(int i = 0; i < loopCount; i++) {
+            loops[i] = new EventLoop(i);
+        }
+    }
+
+    /**
+     * Accept clients and start a session for each of them. This
+     * method returns once the server has been stopped.
+     */
+    public void serve()
+    {
+        running = true;
+        if(scheduler != null) {
+            scheduler.start();
+        }
+        for(EventLoop loop : loops) {
+            loop.thread.start();
+        }
+        int next = 0;
+        while(running) {
+            try {
+                SocketChannel client = serverChannel.accept();
+                loops[next].add(client);
+                next = (next + 1) % loops.length;
+            }
+            catch(IOException e) {
+                if(running) {
+                    System.err.println("Could not accept a client: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Stop accepting clients and end all sessions.
+     */
+    public void stop()
+    {
+        running = false;
+        try {
+            serverChannel.close();
+        }
+        catch(IOException e) {
+            // we are shutting down anyway.
+        }
+        for(EventLoop loop : loops) {
+            loop.selector.wakeup();
+        }
+        events.close();
+        if(scheduler != null) {
+            scheduler.stop();
+        }
+    }
+
+    /**
+     * @return The port the server is listening on.
+     */
+    public int getPort()
+    {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * @return The handlers of the commands of all sessions, with which
+     *         plugins can register more verbs.
+     */
+    public CommandRegistry getCommands()
+    {
+        return commands;
+    }
+
+    /**
+     * @return The number of sessions currently being played.
+     */
+    public int getActiveSessions()
+    {
+        return activeSessions.get();
+    }
+
+    /**
+     * Start a server from the command line.
+     *
+     * @param args The port to listen on, a world file or "generated:seed"
+     *             (both optional), and "private" to give every player
+     *             their own instance of the map.
+     * @throws IOException If the port can't be opened or the world can't be loaded.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : GameServer.DEFAULT_PORT;
+        Room startingRoom = args.length > 1 ? GameServer.loadWorld(args[1]) : Game.createRooms();
+        boolean privateWorlds = args.length > 2 && args[2].equals("private");
+        SelectorServer server = new SelectorServer(port, startingRoom, privateWorlds);
+        System.out.println("PENGUIN DOME is open on port " + server.getPort());
+        if(Game.CARRY_CAPACITY > 0) {
+            System.out.println("Players can carry " + Game.CARRY_CAPACITY + " lbs");
+        }
+        server.serve();
+    }
+
+    /**
+     * A thread that plays the sessions of many clients, and the buffers
+     * it writes their output from.
+     */
+    private class EventLoop
+    {
+        private Selector selector;
+        private Thread thread;
+        private ConcurrentLinkedQueue<SocketChannel> accepted;  // clients not yet started
+        private ConcurrentLinkedQueue<Runnable> tasks;  // work handed over by other threads
+        private ArrayDeque<ByteBuffer> pool;    // buffers free for output
+        private CharsetEncoder encoder;
+
+        private EventLoop(int number) throws IOException
+        {
+            selector = Selector.open();
+            accepted = new ConcurrentLinkedQueue<>();
+            tasks = new ConcurrentLinkedQueue<>();
+            pool = new ArrayDeque<>();
+            encoder = StandardCharsets.UTF_8.newEncoder();
+            thread = new Thread(this::run, "event-loop-" + number);
+            thread.setDaemon(true);
+        }
+
+        /**
+         * Hand a newly accepted client to this loop.
+         */
+        private void add(SocketChannel client)
+        {
+            accepted.add(client);
+            selector.wakeup();
+        }
+
+        /**
+         * Have something done on this loop's thread, such as showing a
+         * player what others have done.
+         */
+        private void execute(Runnable task)
+        {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        private void run()
+        {
+            try {
+                while(running) {
+                    selector.select();
+                    startSessions();
+                    Runnable task;
+                    while((task = tasks.poll()) != null) {
+                        task.run();
+                    }
+                    Iterator<SelectionKey> ready = selector.selectedKeys().iterator();
+                    while(ready.hasNext()) {
+                        SelectionKey key = ready.next();
+                        ready.remove();
+                        ((Session) key.attachment()).handle(key);
+                    }
+                }
+            }
+            catch(IOException | ClosedSelectorException e) {
+                System.err.println("An event loop failed: " + e.getMessage());
+            }
+            finally {
+                for(SelectionKey key : selector.keys()) {
+                    ((Session) key.attachment()).close();
+                }
+                try {
+                    selector.close();
+                }
+                catch(IOException e) {
+                    // nothing more can be done with it.
+                }
+            }
+        }
+
+        /**
+         * Start a session for every client handed to this loop since it
+         * last looked.
+         */
+        private void startSessions()
+        {
+            SocketChannel client;
+            while((client = accepted.poll()) != null) {
+                Session session = new Session(this, client);
+                try {
+                    client.configureBlocking(false);
+                    session.key = client.register(selector, SelectionKey.OP_READ, session);
+                    activeSessions.incrementAndGet();
+                    session.start();
+                }
+                catch(IOException e) {
+                    session.close();
+                }
+            }
+        }
+
+        /**
+         * @return An empty buffer for output, from the pool if it has one.
+         */
+        private ByteBuffer takeBuffer()
+        {
+            ByteBuffer buffer = pool.poll();
+            return buffer != null ? buffer : ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+
+        /**
+         * Give a buffer back to the pool once it has been written.
+         */
+        private void giveBack(ByteBuffer buffer)
+        {
+            if(pool.size() < POOLED_BUFFERS) {
+                buffer.clear();
+                pool.push(buffer);
+            }
+        }
+    }
+
+    /**
+     * One client's game, with the input read from the client that hasn't
+     * been played yet and the output that hasn't been sent yet.
+     */
+    private class Session implements Output
+    {
+        private EventLoop loop;
+        private SocketChannel channel;
+        private SelectionKey key;
+        private Game game;
+        private ByteBuffer input;           // bytes read but not yet made into lines
+        private StringBuilder text;         // output not yet flushed
+        private ArrayDeque<ByteBuffer> output;  // flushed output waiting to be sent
+        private int unsent;                 // bytes of output waiting to be sent
+        private boolean finished;           // whether the game has ended
+        private boolean skipping;           // whether the rest of a long line is being skipped
+        private boolean eventsHeld;         // whether events wait for the output to be sent
+        private boolean closed;
+
+        private Session(EventLoop loop, SocketChannel channel)
+        {
+            this.loop = loop;
+            this.channel = channel;
+            input = ByteBuffer.allocate(MAX_LINE);
+            text = new StringBuilder();
+            output = new ArrayDeque<>();
+        }
+
+        private void start() throws IOException
+        {
+            Room start = privateWorlds ? GameServer.createPrivateWorld(startingRoom) : startingRoom;
+            game = new Game(start, this, commands);
+            game.subscribe(events, "Penguin " + players.incrementAndGet(),
+                           () -> loop.execute(this::showEvents));
+            game.start();
+            send();
+            updateInterest();
+        }
+
+        /**
+         * Do whatever the client is ready for: read its input, play the
+         * lines it makes as far as the client keeps up, and send the output.
+         */
+        private void handle(SelectionKey ready)
+        {
+            try {
+                if(ready.isReadable()) {
+                    if(channel.read(input) < 0) {
+                        // the client has gone away, which ends the game.
+                        if(!finished) {
+                            game.processCommand(new Command(CommandWord.QUIT, null));
+                            endGame();
+                        }
+                        close();
+                        return;
+                    }
+                }
+                if(ready.isWritable()) {
+                    send();
+                }
+                while(playLines() && send()) {
+                    // all the output has gone, so the lines held back can be played.
+                }
+                if(eventsHeld && printEvents()) {
+                    send();
+                }
+                if(finished && output.isEmpty()) {
+                    close();
+                    return;
+                }
+                updateInterest();
+            }
+            catch(IOException e) {
+                close();
+            }
+        }
+
+        /**
+         * Play the complete lines read so far, until the game ends or
+         * too much output is waiting to be sent.
+         * @return true if lines were held back because of the output.
+         */
+        private boolean playLines()
+        {
+            input.flip();
+            while(!finished && unsent < HIGH_WATER && input.hasRemaining()) {
+                int end = -1;
+                for(int i = input.position(); i < input.limit(); i++) {
+                    if(input.get(i) == '\n') {
+                        end = i;
+                        break;
+                    }
+                }
+                if(skipping) {
+                    // the rest of a line that was too long.
+                    input.position(end < 0 ? input.limit() : end + 1);
+                    skipping = end < 0;
+                    continue;
+                }
+                if(end < 0) {
+                    if(input.position() > 0 || input.limit() < input.capacity()) {
+                        break;
+                    }
+                    // the line is too long; play the start of it and
+                    // skip the rest.
+                    end = input.limit();
+                    skipping = true;
+                }
+                int length = end - input.position();
+                if(length > 0 && input.get(end - 1) == '\r') {
+                    length--;
+                }
+                String line = new String(input.array(), input.position(), length, StandardCharsets.UTF_8);
+                input.position(Math.min(end + 1, input.limit()));
+                if(game.processLine(line)) {
+                    endGame();
+                }
+                else {
+                    game.prompt();
+                }
+            }
+            input.compact();
+            return !finished && unsent >= HIGH_WATER;
+        }
+
+        /**
+         * Show the player what others have done while they were waiting
+         * at the prompt, and prompt again.
+         */
+        private void showEvents()
+        {
+            try {
+                if(printEvents()) {
+                    send();
+                    updateInterest();
+                }
+            }
+            catch(IOException e) {
+                close();
+            }
+        }
+
+        /**
+         * Write the events waiting and a new prompt, unless the client is
+         * behind with its output: then the events are left with the
+         * Subscriber until it has caught up.
+         * @return Whether anything was written.
+         */
+        private boolean printEvents()
+        {
+            if(closed || finished || !game.hasEvents()) {
+                return false;
+            }
+            if(unsent >= HIGH_WATER) {
+                eventsHeld = true;
+                return false;
+            }
+            eventsHeld = false;
+            println();
+            game.prompt();
+            return true;
+        }
+
+        private void endGame()
+        {
+            finished = true;
+            game.finish();
+        }
+
+        /**
+         * Read from the client only while it is keeping up with its
+         * output, and wait to write only while there is output left.
+         */
+        private void updateInterest()
+        {
+            int interest = 0;
+            if(!finished && unsent < HIGH_WATER && input.hasRemaining()) {
+                interest |= SelectionKey.OP_READ;
+            }
+            if(!output.isEmpty()) {
+                interest |= SelectionKey.OP_WRITE;
+            }
+            key.interestOps(interest);
+        }
+
+        /**
+         * Write as much of the waiting output as the client will take.
+         * @return true if all of it has been written.
+         */
+        private boolean send() throws IOException
+        {
+            while(!output.isEmpty()) {
+                ByteBuffer buffer = output.peek();
+                unsent -= channel.write(buffer);
+                if(buffer.hasRemaining()) {
+                    return false;
+                }
+                loop.giveBack(output.poll());
+            }
+            return true;
+        }
+
+        @Override
+        public void print(String text)
+        {
+            this.text.append(text);
+        }
+
+        @Override
+        public void println(String text)
+        {
+            this.text.append(text).append(NEWLINE);
+        }
+
+        @Override
+        public void println()
+        {
+            text.append(NEWLINE);
+        }
+
+        /**
+         * Encode the output written since the last flush into buffers,
+         * ready to be sent.
+         */
+        @Override
+        public void flush()
+        {
+            if(text.length() == 0 || closed) {
+                return;
+            }
+            CharBuffer chars = CharBuffer.wrap(text);
+            CharsetEncoder encoder = loop.encoder;
+            encoder.reset();
+            ByteBuffer buffer = loop.takeBuffer();
+            // All the text is encoded before the encoder is flushed, as
+            // CharsetEncoder requires.
+            while(encoder.encode(chars, buffer, true).isOverflow()) {
+                queue(buffer);
+                buffer = loop.takeBuffer();
+            }
+            while(encoder.flush(buffer).isOverflow()) {
+                queue(buffer);
+                buffer = loop.takeBuffer();
+            }
+            queue(buffer);
+            text.setLength(0);
+        }
+
+        private void queue(ByteBuffer buffer)
+        {
+            buffer.flip();
+            if(buffer.hasRemaining()) {
+                unsent += buffer.remaining();
+                output.add(buffer);
+            }
+            else {
+                loop.giveBack(buffer);
+            }
+        }
+
+        private void close()
+        {
+            if(closed) {
+                return;
+            }
+            closed = true;
+            if(game != null && !finished) {
+                // the client went away without quitting.
+                endGame();
+            }
+            if(key != null) {
+                // the session was registered, and counted.
+                key.cancel();
+                activeSessions.decrementAndGet();
+            }
+            closeQuietly(channel);
+            for(ByteBuffer buffer : output) {
+                loop.giveBack(buffer);
+            }
+            output.clear();
+        }
+    }
+
+    private static void closeQuietly(SocketChannel channel)
+    {
+        try {
+            channel.close();
+        }
+        catch(IOException e) {
+            // the client is gone either way.
+        }
+    }
+}
@@ -0,0 +1,204 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * A map divided into regions (see WorldPartition), each looked after by a
+ * thread of its own, so that players in different regions can be served
+ * at the same time without getting in each other's way.
+ *
+ * Every command, and a player's joining and leaving the game, is run on
+ * the thread of the region the player is in, so the players of a region
+ * are served one after another. When a command takes a player
+ * into another region, the player's next command simply goes to that
+ * region's thread instead: the player is handed over like a message. Each
+ * thread takes its work from a lock-free queue and sleeps when there is
+ * none.
+ *
+ * Rooms are not kept to one thread, though. The move that takes a player
+ * into another region is still run by the region they left, so it adds
+ * them to the occupants of a room of the other region (and a dropped item
+ * may end up there the same way); the WorldScheduler's train and penguins
+ * change rooms from their own thread; and events are passed on by the
+ * EventBus's thread. That is safe because a room's items, exits and
+ * occupants are kept in concurrent structures (see Room); what the regions
+ * save is the contention, since few commands reach across a border.
+ *
+ * @author Michael Biondi
+ * @version 2026.10.18
+ */
+public class ShardedWorld
+{
+    private WorldPartition partition;
+    private Shard[] shards;
+    private LongAdder handoffs;     // commands that took a player into another region
+
+    /**
+     * Divide a map into regions and start a thread for each of them.
+     * @param start The room players start in.
+     * @param count The number of regions.
+     */
+    public ShardedWorld(Room start, int count)
+    {
+        partition = WorldPartition.of(start, count);
+        handoffs = new LongAdder();
+        shards = new Shard[partition.getShardCount()];
+        for(int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard("shard-" + i);
+        }
+    }
+
+    /**
+     * @return How the map has been divided.
+     */
+    public WorldPartition getPartition()
+    {
+        return partition;
+    }
+
+    /**
+     * @return The number of commands so far that took a player into
+     *         another region.
+     */
+    public long getHandoffs()
+    {
+        return handoffs.sum();
+    }
+
+    /**
+     * Run a task on the thread of the region a room is in.
+     * @param room The room.
+     * @param task The task.
+     */
+    public void execute(Room room, Runnable task)
+    {
+        shardOf(room).execute(task);
+    }
+
+    /**
+     * Process a line of a player's input on the thread of the region they
+     * are in.
+     * @param game The player's game.
+     * @param line The line to interpret.
+     * @return Whether the command ends the game, once it has been processed;
+     *         anything that depends on it runs on the same thread, unless
+     *         the command has already been processed.
+     */
+    public CompletableFuture<Boolean> processLine(Game game, String line)
+    {
+        return submit(game, () -> game.processLine(line));
+    }
+
+    /**
+     * Run a task of a player's game, such as starting or finishing it, on
+     * the thread of the region they are in.
+     * @param game The player's game.
+     * @param task The task.
+     * @return What the task returns, once it has been run; anything that
+     *         depends on it runs on the same thread, unless the task has
+     *         already been run.
+     */
+    public <T> CompletableFuture<T> submit(Game game, Supplier<T> task)
+    {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Shard shard = shardOf(game.getPlayer().getCurrentRoom());
+        shard.execute(() -> {
+            try {
+                T value = task.get();
+                if(shardOf(game.getPlayer().getCurrentRoom()) != shard) {
+                    handoffs.increment();
+                }
+                result.complete(value);
+            }
+            catch(RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Stop the threads of all regions; work still waiting is never done.
+     */
+    public void shutdown()
+    {
+        for(Shard shard : shards) {
+            shard.stop();
+        }
+    }
+
+    /**
+     * Return the region looking after a room. Rooms that couldn't be
+     * reached when the map was divided are spread over all regions.
+     */
+    private Shard shardOf(Room room)
+    {
+        int shard = partition.getShard(room);
+        if(shard < 0) {
+            shard = Math.floorMod(System.identityHashCode(room), shards.length);
+        }
+        return shards[shard];
+    }
+
+    /**
+     * The thread of one region, and the work waiting for it.
+     */
+    private static class Shard
+    {
+        private ConcurrentLinkedQueue<Runnable> mailbox;
+        private AtomicBoolean sleeping;     // whether the thread needs waking for new work
+        private Thread thread;
+        private volatile boolean running;
+
+        private Shard(String name)
+        {
+            mailbox = new ConcurrentLinkedQueue<>();
+            sleeping = new AtomicBoolean();
+            running = true;
+            thread = new Thread(this::run, name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private void execute(Runnable task)
+        {
+            mailbox.add(task);
+            if(sleeping.get() && sleeping.compareAndSet(true, false)) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        private void stop()
+        {
+            running = false;
+            LockSupport.unpark(thread);
+        }
+
+        private void run()
+        {
+            while(running) {
+                Runnable task = mailbox.poll();
+                if(task != null) {
+                    try {
+                        task.run();
+                    }
+                    catch(RuntimeException e) {
+                        System.err.println("A task of " + thread.getName() + " failed: " + e);
+                    }
+                }
+                else {
+                    // Say we are going to sleep before looking once more,
+                    // so that work added meanwhile either is seen or wakes us.
+                    sleeping.set(true);
+                    if(mailbox.isEmpty() && running) {
+                        LockSupport.park(this);
+                    }
+                    sleeping.set(false);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,266 @@
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Plays many random games at once, to try out a world and to check that
+ * changes to the game don't change how it plays.
+ *
+ * Each game is a random walk: a player in a fresh copy of the world made
+ * by Game.createRooms() is given random commands (going through exits,
+ * taking and dropping items, looking and going back). The games are spread
+ * over the cores with a fork/join pool. Each game gets its own random
+ * numbers, worked out from the simulation's seed and the game's number,
+ * and the results are added up in game order, so a seed always gives
+ * exactly the same results however many threads play.
+ *
+ * @author Michael Biondi
+ * @version 2026.10.18
+ */
+public class Simulation
+{
+    // Games played by one task before the rest are split off to others.
+    private static final int GAMES_PER_TASK = 8;
+
+    private int games;
+    private int steps;
+    private long seed;
+
+    /**
+     * Create a simulation.
+     * @param games The number of games to play.
+     * @param steps The number of commands given in each game.
+     * @param seed The seed all random choices are made from.
+     */
+    public Simulation(int games, int steps, long seed)
+    {
+        this.games = games;
+        this.steps = steps;
+        this.seed = seed;
+    }
+
+    /**
+     * Play all games.
+     * @param threads The number of threads to play on.
+     * @return The combined results of all games.
+     */
+    public Results run(int threads)
+    {
+        long[][] perGame = new long[games][];
+        long started = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.invoke(new Games(perGame, 0, games));
+        }
+        finally {
+            pool.shutdown();
+        }
+        return new Results(perGame, System.nanoTime() - started);
+    }
+
+    /**
+     * Play one game.
+     * @param number The number of the game.
+     * @return The rooms reached, the items collected, the commands given
+     *         and a fingerprint of how the game went.
+     */
+    private long[] play(int number)
+    {
+        SplittableRandom random = new SplittableRandom(seed ^ (0x9E3779B97F4A7C15L * (number + 1)));
+        Output nowhere = new BufferedOutput(OutputStream.nullOutputStream(), StandardCharsets.UTF_8, 256);
+        Game game = new Game(Game.createRooms(), InputStream.nullInputStream(), nowhere);
+        Player player = game.getPlayer();
+        HashSet<Room> reached = new HashSet<>();
+        reached.add(player.getCurrentRoom());
+        long itemsCollected = 0;
+        long fingerprint = number;
+
+        for(int step = 0; step < steps; step++) {
+            Room room = player.getCurrentRoom();
+            Command command = randomCommand(random, room, player);
+            if(command.getCommandWord() == CommandWord.TAKE && room.getItem(command.getSecondWord()) != null) {
+                itemsCollected++;
+            }
+            game.processCommand(command);
+            reached.add(player.getCurrentRoom());
+            fingerprint = fingerprint * 31 + String.valueOf(player.getCurrentRoom().getName()).hashCode();
+        }
+        for(Item item : player.getItems()) {
+            fingerprint = fingerprint * 31 + item.getName().hashCode();
+        }
+        return new long[] { reached.size(), itemsCollected, steps, fingerprint };
+    }
+
+    /**
+     * Choose a random command that makes sense in the player's situation.
+     */
+    private static Command randomCommand(SplittableRandom random, Room room, Player player)
+    {
+        int choice = random.nextInt(10);
+        if(choice < 6) {
+            List<String> exits = new ArrayList<>(room.getExitDirections());
+            if(!exits.isEmpty()) {
+                Collections.sort(exits);
+                return new Command(CommandWord.GO, exits.get(random.nextInt(exits.size())));
+            }
+        }
+        else if(choice < 8) {
+            List<String> items = itemNames(room.getItems());
+            if(!items.isEmpty()) {
+                return new Command(CommandWord.TAKE, items.get(random.nextInt(items.size())));
+            }
+        }
+        else if(choice < 9) {
+            List<String> items = itemNames(player.getItems());
+            if(!items.isEmpty()) {
+                return new Command(CommandWord.DROP, items.get(random.nextInt(items.size())));
+            }
+        }
+        return new Command(random.nextBoolean() ? CommandWord.BACK : CommandWord.LOOK, null);
+    }
+
+    /**
+     * @return The names of some items, sorted so that choices don't depend
+     *         on the order the items are stored in.
+     */
+    private static List<String> itemNames(List<Item> items)
+    {
+        List<String> names = new ArrayList<>();
+        for(Item item : items) {
+            names.add(item.getName());
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    /**
+     * Play a simulation from the command line.
+     * @param args The number of games, the steps per game, the seed and
+     *             the number of threads (all optional).
+     */
+    public static void main(String[] args)
+    {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int steps = args.length > 1 ? Integer.parseInt(args[1]) : 1_000;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 42;
+        int threads = args.length > 3 ? Integer.parseInt(args[3])
+                                      : Runtime.getRuntime().availableProcessors();
+        System.out.println(new Simulation(games, steps, seed).run(threads));
+    }
+
+    /**
+     * A fork/join task playing a range of games, splitting it in half
+     * while it is large.
+     */
+    private class Games extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private long[][] results;
+        private int from;
+        private int to;
+
+        private Games(long[][] results, int from, int to)
+        {
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if(to - from <= GAMES_PER_TASK) {
+                for(int number = from; number < to; number++) {
+                    results[number] = play(number);
+                }
+            }
+            else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Games(results, from, middle), new Games(results, middle, to));
+            }
+        }
+    }
+
+    /**
+     * The combined results of all games of a simulation.
+     */
+    public static class Results
+    {
+        private long roomsReached;
+        private long mostRoomsReached;
+        private long itemsCollected;
+        private long commands;
+        private long fingerprint;
+        private long nanos;
+
+        private Results(long[][] perGame, long nanos)
+        {
+            this.nanos = nanos;
+            for(long[] game : perGame) {
+                roomsReached += game[0];
+                mostRoomsReached = Math.max(mostRoomsReached, game[0]);
+                itemsCollected += game[1];
+                commands += game[2];
+                fingerprint = fingerprint * 1_000_003 + game[3];
+            }
+        }
+
+        /**
+         * @return The rooms reached, added up over all games.
+         */
+        public long getRoomsReached()
+        {
+            return roomsReached;
+        }
+
+        /**
+         * @return The most rooms reached in one game.
+         */
+        public long getMostRoomsReached()
+        {
+            return mostRoomsReached;
+        }
+
+        /**
+         * @return The items picked up, added up over all games.
+         */
+        public long getItemsCollected()
+        {
+            return itemsCollected;
+        }
+
+        /**
+         * @return A number that is the same for two simulations only if
+         *         all their games went the same way.
+         */
+        public long getFingerprint()
+        {
+            return fingerprint;
+        }
+
+        /**
+         * @return The commands processed per second.
+         */
+        public double getCommandsPerSecond()
+        {
+            return commands * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("rooms reached %d (at most %d in one game), items collected %d, "
+                                 + "fingerprint %016x, %.0f commands/s",
+                                 roomsReached, mostRoomsReached, itemsCollected, fingerprint,
+                                 getCommandsPerSecond());
+        }
+    }
+}
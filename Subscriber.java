@@ -0,0 +1,136 @@
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The events waiting to be shown to one player: what other players in
+ * the same room have done since the player last looked at the screen.
+ *
+ * Only a few events are kept. The same event happening several times in
+ * a row is kept once, with a count ("Penguin 3 picked up a pebble. (x4)"),
+ * and once the queue is full further events are only counted, so a
+ * player in a busy room who doesn't keep up is told how much they missed
+ * rather than shown all of it.
+ *
+ * Events are added by the EventBus's thread and shown by the player's
+ * own. When the first event arrives, the wake-up given to the subscriber
+ * (if any) is run once, so that the player's session can show it; it is
+ * not run again until the events have been shown.
+ *
+ * @author Michael Biondi
+ * @version 2026.10.18
+ */
+public class Subscriber
+{
+    // Events kept for a player who hasn't looked yet, at most.
+    public static final int DEFAULT_CAPACITY = 32;
+
+    private String[] texts;     // the events waiting, oldest first
+    private int[] repeats;      // how many times in a row each happened
+    private int size;
+    private int missed;         // events that didn't fit
+    private Runnable wakeup;
+    private AtomicBoolean woken;    // whether the wake-up has run since the events were last shown
+
+    /**
+     * Create a subscriber that keeps the usual number of events.
+     * @param wakeup What to run when events arrive for a player who has
+     *               seen all earlier ones, or null to only show events
+     *               when the player next does something.
+     */
+    public Subscriber(Runnable wakeup)
+    {
+        this(DEFAULT_CAPACITY, wakeup);
+    }
+
+    /**
+     * Create a subscriber.
+     * @param capacity The most events to keep.
+     * @param wakeup What to run when events arrive for a player who has
+     *               seen all earlier ones, or null.
+     */
+    public Subscriber(int capacity, Runnable wakeup)
+    {
+        texts = new String[capacity];
+        repeats = new int[capacity];
+        this.wakeup = wakeup;
+        woken = new AtomicBoolean();
+    }
+
+    /**
+     * Add an event, or count it if there is no room for it.
+     * @param text What happened, such as "Penguin 3 went north."
+     */
+    public synchronized void receive(String text)
+    {
+        if(size > 0 && missed == 0 && texts[size - 1].equals(text)) {
+            repeats[size - 1]++;
+        }
+        else if(size < texts.length) {
+            texts[size] = text;
+            repeats[size] = 1;
+            size++;
+        }
+        else {
+            missed++;
+        }
+    }
+
+    /**
+     * Count events that were never received, because too many happened
+     * at once.
+     * @param count The number of events.
+     */
+    public synchronized void missed(int count)
+    {
+        missed += count;
+    }
+
+    /**
+     * Run the wake-up, unless it has already run for the events waiting.
+     */
+    public void wake()
+    {
+        if(wakeup != null && hasEvents() && woken.compareAndSet(false, true)) {
+            wakeup.run();
+        }
+    }
+
+    /**
+     * @return Whether there are events waiting to be shown.
+     */
+    public synchronized boolean hasEvents()
+    {
+        return size > 0 || missed > 0;
+    }
+
+    /**
+     * Show the events waiting, and forget them.
+     * @param out Where to show them.
+     * @return Whether there were any.
+     */
+    public boolean show(Output out)
+    {
+        String[] shown;
+        int[] times;
+        int count;
+        int notShown;
+        synchronized(this) {
+            woken.set(false);
+            if(size == 0 && missed == 0) {
+                return false;
+            }
+            shown = texts.clone();
+            times = repeats.clone();
+            count = size;
+            notShown = missed;
+            size = 0;
+            missed = 0;
+        }
+        for(int i = 0; i < count; i++) {
+            out.println(times[i] == 1 ? shown[i] : shown[i] + " (x" + times[i] + ")");
+        }
+        if(notShown > 0) {
+            out.println("... and " + notShown + " more things happened around you.");
+        }
+        return true;
+    }
+}
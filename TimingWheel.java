@@ -0,0 +1,214 @@
+/**
+ * Timers that go off after a number of ticks, kept in a hierarchical
+ * timing wheel so that there can be millions of them at once.
+ *
+ * The wheel has LEVELS rings of 64 slots. A slot of the first ring holds
+ * the timers due on one tick; a slot of the second ring those due in one
+ * stretch of 64 ticks, and so on up, each ring 64 times coarser than the
+ * one below. Scheduling a timer puts it straight into the slot of the
+ * ring that covers its delay. Each tick runs the timers of one slot of
+ * the first ring; whenever the first ring has gone all the way round, one
+ * slot of the second ring is emptied into the first, and likewise up the
+ * rings. So scheduling, cancelling and ticking all cost the same however
+ * many timers are waiting, and each timer is only moved a few times.
+ *
+ * A wheel is not synchronized; WorldScheduler keeps its wheel to one
+ * thread.
+ *
+ * @author Michael Biondi
+ * @version 2026.10.18
+ */
+public class TimingWheel
+{
+    // Slots in each ring, as a number of bits.
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int LEVELS = 6;
+    // The longest delay the rings cover; longer timers wait in the top
+    // ring until they are within reach.
+    private static final long MAX_DELAY = (1L << (SLOT_BITS * LEVELS)) - 1;
+
+    private Timer[][] rings;    // the first timer of each slot of each ring
+    private long time;          // the number of ticks so far
+    private int size;
+
+    /**
+     * Create a wheel with no timers, at tick 0.
+     */
+    public TimingWheel()
+    {
+        rings = new Timer[LEVELS][SLOTS];
+    }
+
+    /**
+     * @return The number of ticks so far.
+     */
+    public long getTime()
+    {
+        return time;
+    }
+
+    /**
+     * @return The number of timers waiting.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Run a task after a number of ticks.
+     * @param delay The number of ticks from now; 0 counts as 1.
+     * @param task The task.
+     * @return The timer, with which the task can be cancelled.
+     */
+    public Timer schedule(long delay, Runnable task)
+    {
+        Timer timer = new Timer(task);
+        schedule(timer, delay);
+        return timer;
+    }
+
+    /**
+     * Start a timer that isn't waiting.
+     * @param timer The timer.
+     * @param delay The number of ticks from now; 0 counts as 1.
+     */
+    public void schedule(Timer timer, long delay)
+    {
+        if(timer.wheel != null) {
+            throw new IllegalStateException("the timer is already waiting");
+        }
+        timer.deadline = time + Math.max(delay, 1);
+        timer.wheel = this;
+        insert(timer);
+        size++;
+    }
+
+    /**
+     * Move the wheel on by one tick, and run the tasks due then.
+     */
+    public void tick()
+    {
+        time++;
+        // Going round a ring empties the next slot of the ring above it
+        // into the rings below; the top-most ring due is emptied first.
+        int level = 0;
+        while(level + 1 < LEVELS && ((time >>> (SLOT_BITS * level)) & (SLOTS - 1)) == 0) {
+            level++;
+        }
+        for(; level > 0; level--) {
+            int slot = (int) ((time >>> (SLOT_BITS * level)) & (SLOTS - 1));
+            Timer timer = rings[level][slot];
+            rings[level][slot] = null;
+            while(timer != null) {
+                Timer next = timer.next;
+                timer.previous = null;
+                timer.next = null;
+                insert(timer);
+                timer = next;
+            }
+        }
+
+        int slot = (int) (time & (SLOTS - 1));
+        Timer timer = rings[0][slot];
+        rings[0][slot] = null;
+        while(timer != null) {
+            Timer next = timer.next;
+            timer.previous = null;
+            timer.next = null;
+            timer.wheel = null;
+            size--;
+            try {
+                timer.task.run();
+            }
+            catch(RuntimeException e) {
+                System.err.println("A timed task failed: " + e);
+            }
+            timer = next;
+        }
+    }
+
+    /**
+     * Put a timer into the slot covering its deadline.
+     */
+    private void insert(Timer timer)
+    {
+        long delay = Math.min(timer.deadline - time, MAX_DELAY);
+        int level = 0;
+        while(delay >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        int slot = (int) (((time + delay) >>> (SLOT_BITS * level)) & (SLOTS - 1));
+        timer.level = level;
+        timer.slot = slot;
+        timer.next = rings[level][slot];
+        if(timer.next != null) {
+            timer.next.previous = timer;
+        }
+        rings[level][slot] = timer;
+    }
+
+    /**
+     * Take a waiting timer out of its slot.
+     */
+    private void remove(Timer timer)
+    {
+        if(timer.previous != null) {
+            timer.previous.next = timer.next;
+        }
+        else {
+            rings[timer.level][timer.slot] = timer.next;
+        }
+        if(timer.next != null) {
+            timer.next.previous = timer.previous;
+        }
+        timer.previous = null;
+        timer.next = null;
+        timer.wheel = null;
+        size--;
+    }
+
+    /**
+     * A task waiting to be run by a wheel. The timers of a slot are kept
+     * in a doubly linked list, so one can be taken out from anywhere.
+     */
+    public static class Timer
+    {
+        private Runnable task;
+        private TimingWheel wheel;  // the wheel it is waiting in, or null
+        private long deadline;      // the tick it is due on
+        private int level;
+        private int slot;
+        private Timer previous;
+        private Timer next;
+
+        /**
+         * Create a timer that isn't waiting yet.
+         * @param task The task to run when it goes off.
+         */
+        public Timer(Runnable task)
+        {
+            this.task = task;
+        }
+
+        /**
+         * @return Whether the timer is waiting to go off.
+         */
+        public boolean isWaiting()
+        {
+            return wheel != null;
+        }
+
+        /**
+         * Stop the timer, if it is waiting, so that its task isn't run.
+         * Like the wheel, this must be called on the wheel's thread.
+         */
+        public void cancel()
+        {
+            if(wheel != null) {
+                wheel.remove(this);
+            }
+        }
+    }
+}
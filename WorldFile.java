@@ -0,0 +1,523 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A map of the game stored in a file, so that worlds don't have to be
+ * written into Game.createRooms().
+ *
+ * Worlds are written in a simple text form, one statement per line:
+ *
+ *     # a comment
+ *     room kitchen in the family kitchen
+ *     exit kitchen outside garden
+ *     item kitchen chips 0.2 a bag of chips
+ *     start kitchen
+ *
+ * and compiled into a compact binary form: a table of all strings, a table
+ * of rooms (with their names and descriptions), and the exits and items of
+ * all rooms stored one after the other (each room only records where its
+ * own exits and items begin). The binary
+ * form is memory-mapped when it is loaded, and a room is only built when a
+ * player first comes near it, so loading takes the same time however large
+ * the world is. A SearchIndex of the world is made from the tables too,
+ * without building any rooms.
+ *
+ * @author Michael Biondi
+ * @version 2026.10.18
+ */
+public class WorldFile
+{
+    // The first bytes of every compiled world file: "ZUUL".
+    private static final int MAGIC = 0x5A55554C;
+    private static final int FORMAT_VERSION = 2;
+    // Bytes used by the header, by one room, by one exit and by one item.
+    private static final int HEADER_SIZE = 7 * 4;
+    private static final int ROOM_SIZE = 4 * 4;
+    private static final int EXIT_SIZE = 2 * 4;
+    private static final int ITEM_SIZE = 2 * 4 + 8;
+
+    private ByteBuffer data;
+    private int stringCount;
+    private int roomCount;
+    private int startRoom;
+    // Where each section of the file begins.
+    private int stringOffsets;
+    private int stringBytes;
+    private int roomTable;
+    private int exitTable;
+    private int itemTable;
+    // The rooms built so far, by number.
+    private ConcurrentHashMap<Integer, FileRoom> rooms;
+    private volatile SearchIndex searchIndex;   // the world's index, or null
+
+    /**
+     * Load a world from a file. Compiled files are memory-mapped; text
+     * files are compiled in memory first.
+     * @param path The world file.
+     * @throws IOException If the file can't be read or isn't a valid world.
+     */
+    public WorldFile(Path path) throws IOException
+    {
+        this(open(path));
+    }
+
+    /**
+     * Use a world that has already been compiled.
+     * @param data The compiled world.
+     * @throws IOException If the data isn't a valid world.
+     */
+    private WorldFile(ByteBuffer data) throws IOException
+    {
+        this.data = data;
+        if(data.limit() < HEADER_SIZE || data.getInt(0) != MAGIC) {
+            throw new IOException("not a world file");
+        }
+        if(data.getInt(4) != FORMAT_VERSION) {
+            throw new IOException("unsupported world file version " + data.getInt(4));
+        }
+        stringCount = data.getInt(8);
+        int stringByteCount = data.getInt(12);
+        roomCount = data.getInt(16);
+        int exitCount = data.getInt(20);
+        startRoom = data.getInt(24);
+        stringOffsets = HEADER_SIZE;
+        stringBytes = stringOffsets + (stringCount + 1) * 4;
+        roomTable = stringBytes + stringByteCount;
+        exitTable = roomTable + (roomCount + 1) * ROOM_SIZE;
+        itemTable = exitTable + exitCount * EXIT_SIZE;
+        rooms = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Return the world file a room was read from.
+     * @param room The room.
+     * @return The world, or null if the room isn't from a world file.
+     */
+    public static WorldFile worldOf(Room room)
+    {
+        return room instanceof FileRoom ? ((FileRoom) room).world : null;
+    }
+
+    /**
+     * @return The room in which players start.
+     */
+    public Room getStartingRoom()
+    {
+        return getRoom(startRoom);
+    }
+
+    /**
+     * @return The number of rooms in the world.
+     */
+    public int getRoomCount()
+    {
+        return roomCount;
+    }
+
+    /**
+     * Return a room of the world, building it if nobody has been near
+     * it yet. Its exits are only connected when they are first used.
+     * @param number The number of the room in the file.
+     * @return The room.
+     */
+    public Room getRoom(int number)
+    {
+        return rooms.computeIfAbsent(number, this::buildRoom);
+    }
+
+    /**
+     * Return the number of a room in the file.
+     * @param room The room.
+     * @return Its number, or -1 if it isn't a room of this world.
+     */
+    public int getNumber(Room room)
+    {
+        if(room instanceof FileRoom && ((FileRoom) room).world == this) {
+            return ((FileRoom) room).number;
+        }
+        return -1;
+    }
+
+    /**
+     * Return the name of a room, without building it.
+     * @param number The number of the room in the file.
+     * @return The name.
+     */
+    public String getName(int number)
+    {
+        return getString(data.getInt(roomTable + number * ROOM_SIZE));
+    }
+
+    /**
+     * Return the description of a room, without building it.
+     * @param number The number of the room in the file.
+     * @return The description.
+     */
+    public String getDescription(int number)
+    {
+        return getString(data.getInt(roomTable + number * ROOM_SIZE + 4));
+    }
+
+    /**
+     * Return the items in a room: if it has been built, those it has now;
+     * otherwise those it starts with, without building it.
+     * @param number The number of the room in the file.
+     * @return The items.
+     */
+    public List<Item> getItems(int number)
+    {
+        FileRoom room = rooms.get(number);
+        return room != null ? room.getItems() : readItems(number);
+    }
+
+    /**
+     * Tell the rooms built so far, and those built later, which index to
+     * keep up to date with their items.
+     * @param index The index of this world.
+     */
+    public void setSearchIndex(SearchIndex index)
+    {
+        searchIndex = index;
+        for(FileRoom room : rooms.values()) {
+            room.setSearchIndex(index);
+        }
+    }
+
+    /**
+     * Build a room with its description and items, but no exits yet.
+     */
+    private FileRoom buildRoom(int number)
+    {
+        FileRoom room = new FileRoom(this, number, getName(number), getDescription(number));
+        for(Item item : readItems(number)) {
+            room.addItem(item);
+        }
+        // the index already counts the items the room starts with.
+        room.setSearchIndex(searchIndex);
+        return room;
+    }
+
+    /**
+     * Read the items a room starts with.
+     */
+    private List<Item> readItems(int number)
+    {
+        int entry = roomTable + number * ROOM_SIZE;
+        int firstItem = data.getInt(entry + 12);
+        int endItem = data.getInt(entry + ROOM_SIZE + 12);
+        List<Item> items = new ArrayList<>();
+        for(int item = firstItem; item < endItem; item++) {
+            int position = itemTable + item * ITEM_SIZE;
+            items.add(new Item(getString(data.getInt(position)), getString(data.getInt(position + 4)),
+                               data.getDouble(position + 8)));
+        }
+        return items;
+    }
+
+    /**
+     * Connect the exits of a room to their neighbours.
+     * @param room The room.
+     * @param number The number of the room in the file.
+     */
+    private void connectExits(Room room, int number)
+    {
+        int entry = roomTable + number * ROOM_SIZE;
+        int firstExit = data.getInt(entry + 8);
+        int endExit = data.getInt(entry + ROOM_SIZE + 8);
+        for(int exit = firstExit; exit < endExit; exit++) {
+            int position = exitTable + exit * EXIT_SIZE;
+            room.setExit(getString(data.getInt(position)), getRoom(data.getInt(position + 4)));
+        }
+    }
+
+    /**
+     * Read a string from the string table.
+     */
+    private String getString(int index)
+    {
+        int start = data.getInt(stringOffsets + index * 4);
+        int end = data.getInt(stringOffsets + (index + 1) * 4);
+        byte[] bytes = new byte[end - start];
+        data.slice(stringBytes + start, bytes.length).get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Read a world file: map it if it is compiled, or compile it if it
+     * is text.
+     */
+    private static ByteBuffer open(Path path) throws IOException
+    {
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if(mapped.limit() >= 4 && mapped.getInt(0) == MAGIC) {
+                return mapped;
+            }
+        }
+        return compile(Files.readAllLines(path, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Compile a world from its text form into a binary world file.
+     * @param textFile The world in text form.
+     * @param binaryFile The file to write the compiled world to.
+     * @throws IOException If a file can't be used or the text isn't valid.
+     */
+    public static void compile(Path textFile, Path binaryFile) throws IOException
+    {
+        ByteBuffer compiled = compile(Files.readAllLines(textFile, StandardCharsets.UTF_8));
+        try(FileChannel channel = FileChannel.open(binaryFile, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while(compiled.hasRemaining()) {
+                channel.write(compiled);
+            }
+        }
+    }
+
+    /**
+     * Compile the lines of a world in text form.
+     * @param lines The lines of the world.
+     * @return The compiled world.
+     * @throws IOException If the text isn't valid.
+     */
+    private static ByteBuffer compile(List<String> lines) throws IOException
+    {
+        HashMap<String, Integer> roomNumbers = new HashMap<>();
+        List<String[]> roomLines = new ArrayList<>();
+        List<List<String[]>> exits = new ArrayList<>();
+        List<List<String[]>> items = new ArrayList<>();
+        String start = null;
+
+        // First find the rooms, so that exits may lead to rooms defined later.
+        for(int i = 0; i < lines.size(); i++) {
+            String[] words = split(lines.get(i), 3);
+            if(words.length > 0 && words[0].equals("room")) {
+                if(words.length < 3) {
+                    throw new IOException("line " + (i + 1) + ": room needs a name and a description");
+                }
+                if(roomNumbers.putIfAbsent(words[1], roomLines.size()) != null) {
+                    throw new IOException("line " + (i + 1) + ": room " + words[1] + " defined twice");
+                }
+                roomLines.add(words);
+                exits.add(new ArrayList<>());
+                items.add(new ArrayList<>());
+            }
+        }
+        for(int i = 0; i < lines.size(); i++) {
+            String[] words = split(lines.get(i), 5);
+            if(words.length == 0 || words[0].equals("room")) {
+                continue;
+            }
+            String error = null;
+            switch(words[0]) {
+                case "exit":
+                    if(words.length != 4) {
+                        error = "exit needs a room, a direction and a room";
+                    }
+                    else if(!roomNumbers.containsKey(words[1]) || !roomNumbers.containsKey(words[3])) {
+                        error = "unknown room";
+                    }
+                    else {
+                        exits.get(roomNumbers.get(words[1])).add(words);
+                    }
+                    break;
+                case "item":
+                    if(words.length != 5) {
+                        error = "item needs a room, a name, a weight and a description";
+                    }
+                    else if(!roomNumbers.containsKey(words[1])) {
+                        error = "unknown room";
+                    }
+                    else {
+                        try {
+                            Double.parseDouble(words[3]);
+                            items.get(roomNumbers.get(words[1])).add(words);
+                        }
+                        catch(NumberFormatException e) {
+                            error = "bad weight " + words[3];
+                        }
+                    }
+                    break;
+                case "start":
+                    if(words.length != 2 || !roomNumbers.containsKey(words[1])) {
+                        error = "start needs a known room";
+                    }
+                    else {
+                        start = words[1];
+                    }
+                    break;
+                default:
+                    error = "unknown statement " + words[0];
+            }
+            if(error != null) {
+                throw new IOException("line " + (i + 1) + ": " + error);
+            }
+        }
+        if(roomLines.isEmpty()) {
+            throw new IOException("the world has no rooms");
+        }
+
+        // Build the string table, storing every distinct string once.
+        HashMap<String, Integer> stringIndex = new HashMap<>();
+        List<byte[]> strings = new ArrayList<>();
+        int exitCount = 0;
+        int itemCount = 0;
+        for(int room = 0; room < roomLines.size(); room++) {
+            intern(roomLines.get(room)[1], stringIndex, strings);
+            intern(roomLines.get(room)[2], stringIndex, strings);
+            for(String[] exit : exits.get(room)) {
+                intern(exit[2], stringIndex, strings);
+                exitCount++;
+            }
+            for(String[] item : items.get(room)) {
+                intern(item[2], stringIndex, strings);
+                intern(item[4], stringIndex, strings);
+                itemCount++;
+            }
+        }
+        int stringByteCount = 0;
+        for(byte[] string : strings) {
+            stringByteCount += string.length;
+        }
+
+        int size = HEADER_SIZE + (strings.size() + 1) * 4 + stringByteCount
+                   + (roomLines.size() + 1) * ROOM_SIZE + exitCount * EXIT_SIZE + itemCount * ITEM_SIZE;
+        ByteBuffer out = ByteBuffer.allocate(size);
+        out.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(strings.size()).putInt(stringByteCount)
+           .putInt(roomLines.size()).putInt(exitCount)
+           .putInt(start == null ? 0 : roomNumbers.get(start));
+        int offset = 0;
+        for(byte[] string : strings) {
+            out.putInt(offset);
+            offset += string.length;
+        }
+        out.putInt(offset);
+        for(byte[] string : strings) {
+            out.put(string);
+        }
+        int firstExit = 0;
+        int firstItem = 0;
+        for(int room = 0; room < roomLines.size(); room++) {
+            out.putInt(stringIndex.get(roomLines.get(room)[1])).putInt(stringIndex.get(roomLines.get(room)[2]))
+               .putInt(firstExit).putInt(firstItem);
+            firstExit += exits.get(room).size();
+            firstItem += items.get(room).size();
+        }
+        out.putInt(-1).putInt(-1).putInt(firstExit).putInt(firstItem);
+        for(List<String[]> roomExits : exits) {
+            for(String[] exit : roomExits) {
+                out.putInt(stringIndex.get(exit[2])).putInt(roomNumbers.get(exit[3]));
+            }
+        }
+        for(List<String[]> roomItems : items) {
+            for(String[] item : roomItems) {
+                out.putInt(stringIndex.get(item[2])).putInt(stringIndex.get(item[4]))
+                   .putDouble(Double.parseDouble(item[3]));
+            }
+        }
+        return out.flip();
+    }
+
+    /**
+     * Add a string to the string table if it isn't there yet.
+     */
+    private static void intern(String string, HashMap<String, Integer> index, List<byte[]> strings)
+    {
+        if(!index.containsKey(string)) {
+            index.put(string, strings.size());
+            strings.add(string.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Split a line into at most "limit" words; the last word keeps the
+     * rest of the line. Blank lines and comments have no words.
+     */
+    private static String[] split(String line, int limit)
+    {
+        line = line.strip();
+        if(line.isEmpty() || line.startsWith("#")) {
+            return new String[0];
+        }
+        return line.split("\\s+", limit);
+    }
+
+    /**
+     * Compile a world file from the command line.
+     * @param args The text file and the binary file to write.
+     * @throws IOException If the world can't be compiled.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if(args.length != 2) {
+            System.out.println("usage: WorldFile <text world> <compiled world>");
+            return;
+        }
+        compile(Path.of(args[0]), Path.of(args[1]));
+    }
+
+    /**
+     * A room read from a world file. Its exits are connected the first
+     * time they are needed, so that only the rooms players come near
+     * are ever built.
+     */
+    private static class FileRoom extends Room
+    {
+        private WorldFile world;
+        private int number;
+        private volatile boolean connected;
+
+        private FileRoom(WorldFile world, int number, String name, String description)
+        {
+            super(name, description);
+            this.world = world;
+            this.number = number;
+        }
+
+        @Override
+        public Room getExit(String direction)
+        {
+            connect();
+            return super.getExit(direction);
+        }
+
+        @Override
+        public Collection<String> getExitDirections()
+        {
+            connect();
+            return super.getExitDirections();
+        }
+
+        @Override
+        public String getLongDescription()
+        {
+            connect();
+            return super.getLongDescription();
+        }
+
+        /**
+         * Connect this room's exits, if that hasn't been done yet.
+         */
+        private void connect()
+        {
+            if(!connected) {
+                synchronized(this) {
+                    if(!connected) {
+                        world.connectExits(this, number);
+                        connected = true;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,233 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A private copy of a map, whose items can be taken and dropped without
+ * changing the map it was made from or any other copy of it.
+ *
+ * Nothing is copied when an instance is made. The rooms of an instance
+ * are thin views of the rooms of the shared map: they use the shared
+ * rooms' names, descriptions and exits, and they are only made when a
+ * player (or an item) reaches them. A view shows the items of its shared
+ * room until the first time an item is taken from it or dropped in it;
+ * only then are that room's items copied into the view. So a thousand
+ * instances of a map cost little more than the one map, plus the rooms
+ * in which players have actually moved things.
+ *
+ * An instance is searched with the SearchIndex of the shared map, to
+ * which it only adds the changes to the items of its own rooms.
+ *
+ * The shared map must not be played in directly, and its exits and items
+ * must not change once instances have been made from it.
+ *
+ * @author Michael Biondi
+ * @version 2026.10.18
+ */
+public class WorldInstance
+{
+    private Room start;
+    // The views made so far, by the shared room they show.
+    private ConcurrentHashMap<Room, InstanceRoom> views;
+    private volatile SearchIndex searchIndex;   // the changes to the index of the shared map, or null
+
+    /**
+     * Create a private instance of a map.
+     * @param sharedStart The room players start in, in the shared map.
+     */
+    public WorldInstance(Room sharedStart)
+    {
+        views = new ConcurrentHashMap<>();
+        start = getRoom(sharedStart);
+    }
+
+    /**
+     * @return The room players start in, in this instance.
+     */
+    public Room getStartingRoom()
+    {
+        return start;
+    }
+
+    /**
+     * Return this instance's view of a room of the shared map. The same
+     * object is returned every time for the same room.
+     * @param shared The room in the shared map.
+     * @return The room in this instance.
+     */
+    public Room getRoom(Room shared)
+    {
+        return views.computeIfAbsent(shared, room -> new InstanceRoom(this, room));
+    }
+
+    /**
+     * Return the instance a room belongs to.
+     * @param room The room.
+     * @return The instance, or null if the room isn't in an instance.
+     */
+    public static WorldInstance instanceOf(Room room)
+    {
+        return room instanceof InstanceRoom ? ((InstanceRoom) room).instance : null;
+    }
+
+    /**
+     * Return the room of the shared map that a room of this instance shows.
+     * @param room The room in this instance.
+     * @return The room in the shared map, or null if the room isn't in
+     *         this instance.
+     */
+    public Room getSharedRoom(Room room)
+    {
+        if(room instanceof InstanceRoom && ((InstanceRoom) room).instance == this) {
+            return ((InstanceRoom) room).shared;
+        }
+        return null;
+    }
+
+    /**
+     * @return The rooms of this instance whose items have been copied from
+     *         the shared map, and may have changed.
+     */
+    public List<Room> getChangedRooms()
+    {
+        List<Room> changed = new ArrayList<>();
+        for(InstanceRoom view : views.values()) {
+            if(view.copied) {
+                changed.add(view);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Tell all rooms of this instance, and those made later, which index
+     * to keep up to date with their items.
+     * @param index The index of this instance's changes.
+     */
+    public void setSearchIndex(SearchIndex index)
+    {
+        searchIndex = index;
+        for(InstanceRoom view : views.values()) {
+            view.setSearchIndex(index);
+        }
+    }
+
+    /**
+     * @return The number of rooms of this instance whose items have been
+     *         copied from the shared map.
+     */
+    public int getChangedRoomCount()
+    {
+        int changed = 0;
+        for(InstanceRoom view : views.values()) {
+            if(view.copied) {
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * A view of one room of the shared map. Its exits always come from the
+     * shared room; its items do until they are first changed.
+     */
+    private static class InstanceRoom extends Room
+    {
+        private WorldInstance instance;
+        private Room shared;
+        private volatile boolean copied;    // whether the items are kept here now
+
+        private InstanceRoom(WorldInstance instance, Room shared)
+        {
+            super(shared.getName(), shared.getShortDescription());
+            this.instance = instance;
+            this.shared = shared;
+            setSearchIndex(instance.searchIndex);
+        }
+
+        @Override
+        public void setExit(String direction, Room neighbor)
+        {
+            throw new UnsupportedOperationException("the exits of a world instance can't be changed");
+        }
+
+        @Override
+        public void removeExit(String direction)
+        {
+            throw new UnsupportedOperationException("the exits of a world instance can't be changed");
+        }
+
+        @Override
+        public Room getExit(String direction)
+        {
+            Room neighbor = shared.getExit(direction);
+            return neighbor == null ? null : instance.getRoom(neighbor);
+        }
+
+        @Override
+        public Collection<String> getExitDirections()
+        {
+            return shared.getExitDirections();
+        }
+
+        @Override
+        public String getLongDescription()
+        {
+            // An unchanged room looks just like the shared one, so its
+            // description (built once for all instances) can be used.
+            return copied ? super.getLongDescription() : shared.getLongDescription();
+        }
+
+        @Override
+        public List<Item> getItems()
+        {
+            return copied ? super.getItems() : shared.getItems();
+        }
+
+        @Override
+        public Item getItem(String itemName)
+        {
+            return copied ? super.getItem(itemName) : shared.getItem(itemName);
+        }
+
+        @Override
+        public Item takeItem(String itemName, long maxWeightTenths)
+        {
+            copyItems();
+            return super.takeItem(itemName, maxWeightTenths);
+        }
+
+        @Override
+        public void addItem(Item itemToAdd)
+        {
+            copyItems();
+            super.addItem(itemToAdd);
+        }
+
+        @Override
+        public void removeItem(Item itemToRemove)
+        {
+            copyItems();
+            super.removeItem(itemToRemove);
+        }
+
+        /**
+         * Copy the items of the shared room into this view, the first
+         * time they are about to change.
+         */
+        private synchronized void copyItems()
+        {
+            if(!copied) {
+                // The shared index already counts the shared items.
+                SearchIndex index = getSearchIndex();
+                setSearchIndex(null);
+                for(Item item : shared.getItems()) {
+                    super.addItem(item);
+                }
+                setSearchIndex(index);
+                copied = true;
+            }
+        }
+    }
+}
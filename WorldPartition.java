@@ -0,0 +1,216 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * A division of a map into a few regions of about the same number of
+ * rooms, with as few exits between regions as can be managed cheaply, so
+ * that each region can be looked after by a thread of its own (see
+ * ShardedWorld).
+ *
+ * The regions are grown outwards from a room each, chosen as far apart as
+ * possible: the first is the starting room, and each of the others is the
+ * room furthest from those already chosen. The regions then take turns to
+ * claim the nearest unclaimed room next to them, until each has its share.
+ * On a grid this gives compact blobs, so only the exits along their edges
+ * lead from one region to another.
+ *
+ * @author Michael Biondi
+ * @version 2026.10.18
+ */
+public class WorldPartition
+{
+    private List<Room> rooms;
+    private IdentityHashMap<Room, Integer> shards;  // the region of each room
+    private int[] sizes;        // the number of rooms in each region
+    private long cutExits;      // exits from one region to another
+
+    /**
+     * Divide the map reachable from a room into regions.
+     * @param start The room players start in.
+     * @param count The number of regions.
+     * @return The division.
+     */
+    public static WorldPartition of(Room start, int count)
+    {
+        if(GeneratedWorld.worldOf(start) != null) {
+            throw new IllegalArgumentException("a generated world has no end to divide up");
+        }
+        if(count < 1) {
+            throw new IllegalArgumentException("there must be at least one region");
+        }
+        return new WorldPartition(start, count);
+    }
+
+    private WorldPartition(Room start, int count)
+    {
+        // Number the rooms in the order they are first reached.
+        rooms = new ArrayList<>();
+        IdentityHashMap<Room, Integer> numbers = new IdentityHashMap<>();
+        rooms.add(start);
+        numbers.put(start, 0);
+        List<int[]> neighbors = new ArrayList<>();
+        for(int i = 0; i < rooms.size(); i++) {
+            Room room = rooms.get(i);
+            int[] adjacent = new int[room.getExitDirections().size()];
+            int n = 0;
+            for(String direction : room.getExitDirections()) {
+                Room neighbor = room.getExit(direction);
+                Integer number = numbers.get(neighbor);
+                if(number == null) {
+                    number = rooms.size();
+                    numbers.put(neighbor, number);
+                    rooms.add(neighbor);
+                }
+                adjacent[n++] = number;
+            }
+            neighbors.add(n == adjacent.length ? adjacent : Arrays.copyOf(adjacent, n));
+        }
+        int roomCount = rooms.size();
+        count = Math.min(count, roomCount);
+
+        // Choose the seeds of the regions, each as far as possible from
+        // those chosen before it.
+        int[] seeds = new int[count];
+        int[] distance = new int[roomCount];
+        Arrays.fill(distance, Integer.MAX_VALUE);
+        for(int s = 0; s < count; s++) {
+            int seed = 0;
+            if(s > 0) {
+                for(int r = 1; r < roomCount; r++) {
+                    if(distance[r] > distance[seed]) {
+                        seed = r;
+                    }
+                }
+            }
+            seeds[s] = seed;
+            updateDistances(seed, distance, neighbors);
+        }
+
+        // Grow the regions in turn, one room at a time, up to their share.
+        int[] shardOf = new int[roomCount];
+        Arrays.fill(shardOf, -1);
+        sizes = new int[count];
+        int share = (roomCount + count - 1) / count;
+        List<ArrayDeque<Integer>> frontiers = new ArrayList<>();
+        for(int s = 0; s < count; s++) {
+            ArrayDeque<Integer> frontier = new ArrayDeque<>();
+            frontier.add(seeds[s]);
+            frontiers.add(frontier);
+        }
+        boolean growing = true;
+        while(growing) {
+            growing = false;
+            for(int s = 0; s < count; s++) {
+                ArrayDeque<Integer> frontier = frontiers.get(s);
+                while(sizes[s] < share && !frontier.isEmpty()) {
+                    int room = frontier.poll();
+                    if(shardOf[room] < 0) {
+                        shardOf[room] = s;
+                        sizes[s]++;
+                        for(int neighbor : neighbors.get(room)) {
+                            if(shardOf[neighbor] < 0) {
+                                frontier.add(neighbor);
+                            }
+                        }
+                        growing = true;
+                        break;
+                    }
+                }
+            }
+        }
+        // Rooms walled in by full regions join the region of a neighbour;
+        // rooms are numbered outwards from the start, so one of them has
+        // always been placed already.
+        for(int r = 0; r < roomCount; r++) {
+            if(shardOf[r] < 0) {
+                for(int neighbor : neighbors.get(r)) {
+                    if(shardOf[neighbor] >= 0) {
+                        shardOf[r] = shardOf[neighbor];
+                        break;
+                    }
+                }
+                if(shardOf[r] < 0) {
+                    shardOf[r] = 0;
+                }
+                sizes[shardOf[r]]++;
+            }
+        }
+
+        shards = new IdentityHashMap<>();
+        for(int r = 0; r < roomCount; r++) {
+            shards.put(rooms.get(r), shardOf[r]);
+            for(int neighbor : neighbors.get(r)) {
+                if(shardOf[neighbor] != shardOf[r]) {
+                    cutExits++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Lower the distances of rooms to the nearest seed, given a new seed.
+     */
+    private static void updateDistances(int seed, int[] distance, List<int[]> neighbors)
+    {
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        distance[seed] = 0;
+        queue.add(seed);
+        while(!queue.isEmpty()) {
+            int room = queue.poll();
+            for(int neighbor : neighbors.get(room)) {
+                if(distance[neighbor] > distance[room] + 1) {
+                    distance[neighbor] = distance[room] + 1;
+                    queue.add(neighbor);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The number of regions.
+     */
+    public int getShardCount()
+    {
+        return sizes.length;
+    }
+
+    /**
+     * Return the region a room is in.
+     * @param room The room.
+     * @return The number of its region, or -1 if the room wasn't reachable
+     *         when the map was divided.
+     */
+    public int getShard(Room room)
+    {
+        Integer shard = shards.get(room);
+        return shard == null ? -1 : shard;
+    }
+
+    /**
+     * @return The number of rooms in a region.
+     */
+    public int getSize(int shard)
+    {
+        return sizes[shard];
+    }
+
+    /**
+     * @return All rooms of the map, in the order they were first reached
+     *         from the starting room.
+     */
+    public List<Room> getRooms()
+    {
+        return rooms;
+    }
+
+    /**
+     * @return The number of exits leading from one region to another.
+     */
+    public long getCutExits()
+    {
+        return cutExits;
+    }
+}
@@ -0,0 +1,392 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Keeps the world going between players' commands: penguins wander from
+ * room to room, items turn up again after they have been taken, and the
+ * train runs between the station and the city to a timetable.
+ *
+ * Everything happens on the scheduler's own thread, which moves a
+ * TimingWheel on by one tick every TICK_MILLIS milliseconds. Tasks may be
+ * scheduled from any thread; those scheduled from elsewhere are handed to
+ * the scheduler's thread and put into the wheel before its next tick. The
+ * tasks themselves only change the world in ways players' commands can
+ * run alongside: items are taken and added atomically, and a room's exits
+ * are replaced rather than changed in place.
+ *
+ * When an EventBus is given, the players in the rooms concerned are told
+ * what happens ("Pingu waddles in.").
+ *
+ * @author Michael Biondi
+ * @version 2026.10.18
+ */
+public class WorldScheduler
+{
+    // The length of a tick in milliseconds.
+    public static final long TICK_MILLIS = 100;
+    // The wandering penguins of the Penguin Dome.
+    private static final String[] PENGUINS = { "Pingu", "Pinga", "Robby", "Pingo" };
+    // Ticks between a penguin's moves, at least; it waits up to as long again.
+    private static final long PENGUIN_PAUSE = 50;
+    // Ticks before taken items turn up again.
+    private static final long RESPAWN_TICKS = 600;
+    // Ticks the train waits at each stop, and takes between them.
+    private static final long TRAIN_STOP = 150;
+    private static final long TRAIN_JOURNEY = 100;
+    // The rooms looked at for the kitchen, bedroom, train, station and
+    // city. The built-in map has only a few rooms; the rooms of a large
+    // world file are only built when players come near, so they aren't
+    // all walked through just to look for these.
+    private static final int NAMED_ROOM_SEARCH = 64;
+
+    private TimingWheel wheel;
+    private ConcurrentLinkedQueue<Scheduled> incoming;  // tasks scheduled from other threads
+    private EventBus events;
+    private Thread thread;
+    private volatile boolean running;
+
+    /**
+     * Create a scheduler with nothing to do yet.
+     * @param events Where players are told what happens, or null.
+     */
+    public WorldScheduler(EventBus events)
+    {
+        this.events = events;
+        wheel = new TimingWheel();
+        incoming = new ConcurrentLinkedQueue<>();
+        thread = new Thread(this::run, "world-scheduler");
+        thread.setDaemon(true);
+    }
+
+    /**
+     * Create a scheduler for a map, with penguins wandering from the
+     * starting room. If the map has a kitchen and a bedroom, their chips and
+     * coffee turn up again; if it has a train, a station and a city, the
+     * train runs between them.
+     * @param start The room players start in.
+     * @param events Where players are told what happens, or null.
+     * @return The scheduler, not yet started.
+     */
+    public static WorldScheduler createFor(Room start, EventBus events)
+    {
+        WorldScheduler scheduler = new WorldScheduler(events);
+        for(int i = 0; i < PENGUINS.length; i++) {
+            scheduler.addPenguin(PENGUINS[i], start, i);
+        }
+        if(GeneratedWorld.worldOf(start) != null) {
+            // a generated map has no end to search for named rooms.
+            return scheduler;
+        }
+        Map<String, Room> rooms = findRooms(start, "kitchen", "bedroom", "train", "station", "city");
+        Room kitchen = rooms.get("kitchen");
+        if(kitchen != null && kitchen.getItem("chips") != null) {
+            scheduler.respawn(kitchen, kitchen.getItem("chips"), RESPAWN_TICKS);
+        }
+        Room bedroom = rooms.get("bedroom");
+        if(bedroom != null && bedroom.getItem("coffee") != null) {
+            scheduler.respawn(bedroom, bedroom.getItem("coffee"), RESPAWN_TICKS);
+        }
+        Room train = rooms.get("train");
+        Room station = rooms.get("station");
+        Room city = rooms.get("city");
+        if(train != null && station != null && city != null) {
+            scheduler.runTrain(train, station, city);
+        }
+        return scheduler;
+    }
+
+    /**
+     * Look for rooms by name near a room, breadth-first, until all of them
+     * are found or NAMED_ROOM_SEARCH rooms have been looked at.
+     * @return The rooms found, by name.
+     */
+    private static Map<String, Room> findRooms(Room start, String... names)
+    {
+        Map<String, Room> found = new HashMap<>();
+        List<String> wanted = List.of(names);
+        IdentityHashMap<Room, Boolean> seen = new IdentityHashMap<>();
+        ArrayDeque<Room> queue = new ArrayDeque<>();
+        seen.put(start, true);
+        queue.add(start);
+        int looked = 0;
+        while(!queue.isEmpty() && found.size() < names.length && looked++ < NAMED_ROOM_SEARCH) {
+            Room room = queue.poll();
+            if(room.getName() != null && wanted.contains(room.getName())) {
+                found.putIfAbsent(room.getName(), room);
+            }
+            for(String direction : room.getExitDirections()) {
+                Room neighbor = room.getExit(direction);
+                if(seen.put(neighbor, true) == null) {
+                    queue.add(neighbor);
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Start ticking.
+     */
+    public void start()
+    {
+        running = true;
+        thread.start();
+    }
+
+    /**
+     * Stop ticking; tasks still waiting are never run.
+     */
+    public void stop()
+    {
+        running = false;
+        thread.interrupt();
+    }
+
+    /**
+     * @return The number of ticks so far.
+     */
+    public long getTime()
+    {
+        return wheel.getTime();
+    }
+
+    /**
+     * Run a task on the scheduler's thread after a number of ticks.
+     * @param delay The number of ticks from now; 0 counts as 1.
+     * @param task The task.
+     */
+    public void schedule(long delay, Runnable task)
+    {
+        if(Thread.currentThread() == thread) {
+            wheel.schedule(delay, task);
+        }
+        else {
+            incoming.add(new Scheduled(delay, task));
+        }
+    }
+
+    /**
+     * Let a penguin wander the map, taking a random exit every few seconds.
+     * @param name The penguin's name.
+     * @param start The room it starts in.
+     * @param seed The seed of its random choices.
+     */
+    public void addPenguin(String name, Room start, long seed)
+    {
+        Penguin penguin = new Penguin(name, start, new SplittableRandom(seed));
+        schedule(penguin.pause(), penguin);
+    }
+
+    /**
+     * Put an item back into a room every so often, if there is none with
+     * its name there.
+     * @param room The room.
+     * @param item The item.
+     * @param period The ticks between looks at the room.
+     */
+    public void respawn(Room room, Item item, long period)
+    {
+        schedule(period, new Runnable() {
+            @Override
+            public void run()
+            {
+                if(room.getItem(item.getName()) == null) {
+                    room.addItem(item);
+                    tell(room, item.getDescription() + " turns up.");
+                }
+                schedule(period, this);
+            }
+        });
+    }
+
+    /**
+     * Run a train between two stops. The train starts at the first stop;
+     * while it travels, it has no way out and can't be got into.
+     * @param train The train.
+     * @param station The first stop, from which the train's exit is "station".
+     * @param city The second stop, from which the train's exit is "off".
+     */
+    public void runTrain(Room train, Room station, Room city)
+    {
+        List<Stop> stops = new ArrayList<>();
+        stops.add(new Stop(station, "station", "choochoo"));
+        stops.add(new Stop(city, "off", "underground"));
+        Train runner = new Train(train, stops);
+        runner.arrive(0);
+        schedule(TRAIN_STOP, runner);
+    }
+
+    /**
+     * Tell the players in a room what has happened there.
+     */
+    private void tell(Room room, String text)
+    {
+        if(events != null) {
+            events.publish(room, null, capitalize(text));
+        }
+    }
+
+    private static String capitalize(String text)
+    {
+        return text.isEmpty() ? text : Character.toUpperCase(text.charAt(0)) + text.substring(1);
+    }
+
+    private void run()
+    {
+        long next = System.nanoTime();
+        while(running) {
+            Scheduled scheduled;
+            while((scheduled = incoming.poll()) != null) {
+                wheel.schedule(scheduled.delay, scheduled.task);
+            }
+            wheel.tick();
+            // Keep to the clock, so that late ticks are caught up on.
+            next += TICK_MILLIS * 1_000_000;
+            long wait = next - System.nanoTime();
+            if(wait > 0) {
+                try {
+                    Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+                }
+                catch(InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * A task scheduled from another thread, not yet in the wheel.
+     */
+    private static class Scheduled
+    {
+        private final long delay;
+        private final Runnable task;
+
+        private Scheduled(long delay, Runnable task)
+        {
+            this.delay = delay;
+            this.task = task;
+        }
+    }
+
+    /**
+     * A penguin that takes a random exit every so often.
+     */
+    private class Penguin implements Runnable
+    {
+        private String name;
+        private Room room;
+        private SplittableRandom random;
+
+        private Penguin(String name, Room room, SplittableRandom random)
+        {
+            this.name = name;
+            this.room = room;
+            this.random = random;
+        }
+
+        private long pause()
+        {
+            return PENGUIN_PAUSE + random.nextLong(PENGUIN_PAUSE + 1);
+        }
+
+        @Override
+        public void run()
+        {
+            List<String> directions = new ArrayList<>(room.getExitDirections());
+            if(!directions.isEmpty()) {
+                String direction = directions.get(random.nextInt(directions.size()));
+                Room next = room.getExit(direction);
+                if(next != null) {
+                    tell(room, name + " waddles off " + direction + ".");
+                    room = next;
+                    tell(room, name + " waddles in.");
+                }
+            }
+            schedule(pause(), this);
+        }
+    }
+
+    /**
+     * A place the train stops: the room, the train's exit into it, and
+     * its exit into the train.
+     */
+    private static class Stop
+    {
+        private final Room room;
+        private final String exitFromTrain;
+        private final String exitToTrain;
+
+        private Stop(Room room, String exitFromTrain, String exitToTrain)
+        {
+            this.room = room;
+            this.exitFromTrain = exitFromTrain;
+            this.exitToTrain = exitToTrain;
+        }
+    }
+
+    /**
+     * The train, which waits at a stop and then travels to the next one.
+     */
+    private class Train implements Runnable
+    {
+        private Room train;
+        private List<Stop> stops;
+        private int stop;           // the stop the train is at, or has just left
+        private boolean travelling;
+
+        private Train(Room train, List<Stop> stops)
+        {
+            this.train = train;
+            this.stops = stops;
+        }
+
+        /**
+         * Stop at a stop, connecting the train to it, and disconnect the
+         * train from the others.
+         */
+        private void arrive(int number)
+        {
+            stop = number;
+            for(int i = 0; i < stops.size(); i++) {
+                if(i != number) {
+                    leave(stops.get(i));
+                }
+            }
+            Stop here = stops.get(number);
+            train.setExit(here.exitFromTrain, here.room);
+            here.room.setExit(here.exitToTrain, train);
+        }
+
+        private void leave(Stop stop)
+        {
+            train.removeExit(stop.exitFromTrain);
+            stop.room.removeExit(stop.exitToTrain);
+        }
+
+        @Override
+        public void run()
+        {
+            if(travelling) {
+                travelling = false;
+                arrive((stop + 1) % stops.size());
+                tell(train, "The train pulls in and the doors open.");
+                tell(stops.get(stop).room, "A train pulls in and the doors open.");
+                schedule(TRAIN_STOP, this);
+            }
+            else {
+                travelling = true;
+                leave(stops.get(stop));
+                tell(train, "The doors close and the train rumbles off.");
+                tell(stops.get(stop).room, "The doors close and the train rumbles off.");
+                schedule(TRAIN_JOURNEY, this);
+            }
+        }
+    }
+}